@@ -0,0 +1,227 @@
+/**
+ * TGABenchmark.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package test.sample.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import net.npe.tga.EncodeType;
+import net.npe.tga.TGAReader;
+import net.npe.tga.TGAWriter;
+
+/**
+ * Allocation and throughput gate for TGAReader.read and TGAWriter.write.
+ *
+ * Decodes and encodes every TGA in the images directory plus large synthetic images and
+ * exits with status 1 when
+ * - the steady state allocation of one call exceeds its budget: the returned array, plus the
+ *   RLE decode buffer for compressed files, plus a small fixed slack
+ * - the throughput of a case drops more than the tolerance below the stored baseline
+ *
+ * Usage: java test.sample.benchmark.TGABenchmark [images dir] [baseline file] [--update-baseline]
+ * Record the baseline once per CI machine with --update-baseline, then run without it.
+ * -Dtga.tolerance=0.3 sets the allowed throughput drop.
+ */
+public class TGABenchmark {
+    private static final long SLACK_BYTES = 4 * 1024;
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("tga.tolerance", "0.30")); // allowed throughput drop
+    private static final int WARMUP = 20;
+    private static final int ALLOCATION_CALLS = 10;
+    private static final long WORK_PIXELS = 32L * 1024 * 1024; // pixels processed per throughput case
+    private static final int ROUNDS = 4; // the work is split into rounds, the fastest one counts
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        Path images = Paths.get(args.length > 0 ? args[0] : "../../images");
+        Path baselinePath = Paths.get(args.length > 1 ? args[1] : "baseline.properties");
+        boolean update = args.length > 2 && args[2].equals("--update-baseline");
+
+        if(!THREADS.isThreadAllocatedMemorySupported()) {
+            System.err.println("Thread allocation accounting is not supported by this JVM");
+            System.exit(1);
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        List<Case> cases = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(images, "*.tga")) {
+            for(Path file : files) {
+                cases.add(new Case(file.getFileName().toString(), Files.readAllBytes(file)));
+            }
+        }
+        cases.add(synthetic("synthetic_noise_4096.tga", 4096, 4096, true, EncodeType.NONE));
+        cases.add(synthetic("synthetic_flat_4096_rle.tga", 4096, 4096, false, EncodeType.RLE));
+        cases.sort((a, b) -> a.name.compareTo(b.name));
+
+        Properties baseline = new Properties();
+        if(Files.exists(baselinePath)) {
+            try(InputStream in = Files.newInputStream(baselinePath)) {
+                baseline.load(in);
+            }
+        }
+        Properties measured = new Properties();
+
+        // compile the codec with the profile of all cases before measuring any of them
+        for(int i = 0; i < WARMUP; i++) {
+            for(Case c : cases) {
+                int[] pixels = TGAReader.read(c.buffer, TGAReader.ARGB);
+                sink = TGAWriter.write(pixels, TGAReader.getWidth(c.buffer), TGAReader.getHeight(c.buffer), TGAReader.ARGB);
+            }
+        }
+
+        int failures = 0;
+        for(Case c : cases) {
+            int width = TGAReader.getWidth(c.buffer);
+            int height = TGAReader.getHeight(c.buffer);
+            int pixelCount = width * height;
+            int[] pixels = TGAReader.read(c.buffer, TGAReader.ARGB);
+            byte[] encoded = TGAWriter.write(pixels, width, height, TGAReader.ARGB);
+
+            // allocation
+            long readBudget = arraySize(4L * pixelCount) + SLACK_BYTES;
+            if(isRLE(c.buffer)) {
+                readBudget += arraySize((long) (c.buffer[16] & 0xFF) / 8 * pixelCount);
+            }
+            long writeBudget = arraySize(encoded.length) + SLACK_BYTES;
+            long readBytes = allocation(() -> TGAReader.read(c.buffer, TGAReader.ARGB));
+            long writeBytes = allocation(() -> TGAWriter.write(pixels, width, height, TGAReader.ARGB));
+            failures += check(c.name+" read allocation", readBytes, readBudget);
+            failures += check(c.name+" write allocation", writeBytes, writeBudget);
+
+            // throughput
+            int iterations = (int) Math.max(1, WORK_PIXELS / Math.max(1, pixelCount));
+            double readRate = throughput(iterations, pixelCount, () -> TGAReader.read(c.buffer, TGAReader.ARGB));
+            double writeRate = throughput(iterations, pixelCount, () -> TGAWriter.write(pixels, width, height, TGAReader.ARGB));
+            measured.setProperty(c.name+".read", String.format("%.1f", readRate));
+            measured.setProperty(c.name+".write", String.format("%.1f", writeRate));
+            if(!update) {
+                failures += compare(c.name+" read", readRate, baseline.getProperty(c.name+".read"));
+                failures += compare(c.name+" write", writeRate, baseline.getProperty(c.name+".write"));
+            }
+        }
+
+        if(update) {
+            try(OutputStream out = Files.newOutputStream(baselinePath)) {
+                measured.store(out, "TGABenchmark throughput baseline, Mpixels/s");
+            }
+            System.out.println("Baseline written to "+baselinePath);
+        }
+        if(failures > 0) {
+            System.out.println(failures+" regression(s)");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private interface Call {
+        Object run() throws IOException;
+    }
+
+    private static Object sink;
+
+    // steady state bytes allocated by one call on this thread
+    private static long allocation(Call call) throws IOException {
+        for(int i = 0; i < WARMUP; i++) {
+            sink = call.run();
+        }
+        long min = Long.MAX_VALUE;
+        for(int i = 0; i < ALLOCATION_CALLS; i++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            sink = call.run();
+            min = Math.min(min, THREADS.getCurrentThreadAllocatedBytes() - before);
+        }
+        return min;
+    }
+
+    // Mpixels per second over a fixed amount of work, best round to filter out scheduling noise
+    private static double throughput(int iterations, int pixelCount, Call call) throws IOException {
+        for(int i = 0; i < Math.min(iterations, WARMUP); i++) {
+            sink = call.run();
+        }
+        int perRound = Math.max(1, iterations / ROUNDS);
+        double best = 0;
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for(int i = 0; i < perRound; i++) {
+                sink = call.run();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            best = Math.max(best, (double) perRound * pixelCount / 1e6 / seconds);
+        }
+        return best;
+    }
+
+    private static int check(String name, long bytes, long budget) {
+        if(bytes > budget) {
+            System.out.println("FAIL "+name+": "+bytes+" bytes, budget "+budget);
+            return 1;
+        }
+        System.out.println("ok   "+name+": "+bytes+" bytes, budget "+budget);
+        return 0;
+    }
+
+    private static int compare(String name, double rate, String baseline) {
+        if(baseline == null) {
+            System.out.println("new  "+name+": "+String.format("%.1f", rate)+" Mpixels/s, no baseline");
+            return 0;
+        }
+        double expected = Double.parseDouble(baseline);
+        if(rate < expected * (1 - TOLERANCE)) {
+            System.out.println("FAIL "+name+": "+String.format("%.1f", rate)+" Mpixels/s, baseline "+baseline);
+            return 1;
+        }
+        System.out.println("ok   "+name+": "+String.format("%.1f", rate)+" Mpixels/s, baseline "+baseline);
+        return 0;
+    }
+
+    // header + padded payload of a Java array, 16 bytes covers the header on common 64 bit JVMs
+    private static long arraySize(long payload) {
+        return 16 + ((payload + 7) & ~7L);
+    }
+
+    private static boolean isRLE(byte[] buffer) {
+        return (buffer[2] & 0x08) != 0;
+    }
+
+    private static Case synthetic(String name, int width, int height, boolean noise, EncodeType encodeType) {
+        Random random = new Random(width * 31 + height);
+        int[] pixels = new int[width * height];
+        for(int i = 0; i < pixels.length; i++) {
+            pixels[i] = noise ? random.nextInt() : 0xFF000000 | (i / (width * 16)) * 0x010101;
+        }
+        return new Case(name, TGAWriter.write(pixels, width, height, TGAReader.ARGB, encodeType));
+    }
+
+    private static final class Case {
+        final String name;
+        final byte[] buffer;
+
+        Case(String name, byte[] buffer) {
+            this.name = name;
+            this.buffer = buffer;
+        }
+    }
+}
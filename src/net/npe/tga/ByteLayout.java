@@ -0,0 +1,41 @@
+/**
+ * ByteLayout.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+// Byte offsets of each channel inside one interleaved pixel, -1 if the channel is not stored.
+public class ByteLayout {
+    public final int pixelSize;
+    public final int redOffset;
+    public final int greenOffset;
+    public final int blueOffset;
+    public final int alphaOffset;
+    public final int luminanceOffset;
+    public final boolean premultiplied; // color channels multiplied by alpha
+
+    public ByteLayout(int pixelSize, int redOffset, int greenOffset, int blueOffset, int alphaOffset, int luminanceOffset) {
+        this(pixelSize, redOffset, greenOffset, blueOffset, alphaOffset, luminanceOffset, false);
+    }
+
+    public ByteLayout(int pixelSize, int redOffset, int greenOffset, int blueOffset, int alphaOffset, int luminanceOffset, boolean premultiplied) {
+        this.pixelSize = pixelSize;
+        this.redOffset = redOffset;
+        this.greenOffset = greenOffset;
+        this.blueOffset = blueOffset;
+        this.alphaOffset = alphaOffset;
+        this.luminanceOffset = luminanceOffset;
+        this.premultiplied = premultiplied;
+    }
+}
@@ -15,16 +15,22 @@
 
 package net.npe.tga;
 
-class Order {
-    public int redShift;
-    public int greenShift;
-    public int blueShift;
-    public int alphaShift;
+public class Order {
+    public final int redShift;
+    public final int greenShift;
+    public final int blueShift;
+    public final int alphaShift;
+    public final boolean premultiplied; // color channels multiplied by alpha
 
-    Order(int redShift, int greenShift, int blueShift, int alphaShift) {
+    public Order(int redShift, int greenShift, int blueShift, int alphaShift) {
+        this(redShift, greenShift, blueShift, alphaShift, false);
+    }
+
+    public Order(int redShift, int greenShift, int blueShift, int alphaShift, boolean premultiplied) {
         this.redShift = redShift;
         this.greenShift = greenShift;
         this.blueShift = blueShift;
         this.alphaShift = alphaShift;
+        this.premultiplied = premultiplied;
     }
 }
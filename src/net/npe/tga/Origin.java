@@ -0,0 +1,23 @@
+/**
+ * Origin.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+public enum Origin {
+    LOWER_LEFT,  // first stored row is the bottom row
+    LOWER_RIGHT,
+    UPPER_LEFT,  // first stored row is the top row
+    UPPER_RIGHT,
+}
@@ -0,0 +1,187 @@
+/**
+ * TGAAsync.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Non-blocking file decode and encode.
+ * File I/O runs on AsynchronousFileChannel, pixel work runs on the given executor.
+ * Cancelling a returned future closes the channel or stops the codec at the next row.
+ */
+public final class TGAAsync {
+
+    private TGAAsync() {
+    }
+
+    public static CompletableFuture<TGAImage> decodeAsync(Path path, Order order) {
+        return decodeAsync(path, order, ForkJoinPool.commonPool());
+    }
+
+    public static CompletableFuture<TGAImage> decodeAsync(Path path, Order order, Executor executor) {
+        CompletableFuture<TGAImage> result = new CompletableFuture<>();
+        CompletableFuture<byte[]> bytes = readAsync(path, result);
+        bytes.thenAcceptAsync(buffer -> {
+            if(result.isDone()) {
+                return;
+            }
+            try {
+                int[] pixels = TGAReader.read(buffer, order, result::isCancelled);
+                result.complete(new TGAImage(TGAReader.getWidth(buffer), TGAReader.getHeight(buffer), pixels));
+            } catch(CancellationException e) {
+                result.cancel(false);
+            } catch(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, executor).exceptionally(t -> {
+            // rejected by the executor, fail the same way encodeAsync does
+            result.completeExceptionally((t instanceof CompletionException) ? t.getCause() : t);
+            return null;
+        });
+        return result;
+    }
+
+    public static CompletableFuture<Void> encodeAsync(Path path, int[] pixels, int width, int height, Order order) {
+        return encodeAsync(path, pixels, width, height, order, EncodeType.AUTO, ForkJoinPool.commonPool());
+    }
+
+    public static CompletableFuture<Void> encodeAsync(Path path, int[] pixels, int width, int height, Order order, EncodeType encodeType, Executor executor) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if(result.isDone()) {
+                    return;
+                }
+                byte[] buffer;
+                try {
+                    buffer = TGAWriter.write(pixels, width, height, order, encodeType, result::isCancelled);
+                } catch(CancellationException e) {
+                    result.cancel(false);
+                    return;
+                } catch(Throwable t) {
+                    result.completeExceptionally(t);
+                    return;
+                }
+                writeAsync(path, buffer, result);
+            });
+        } catch(RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static CompletableFuture<byte[]> readAsync(Path path, CompletableFuture<?> result) {
+        CompletableFuture<byte[]> bytes = new CompletableFuture<>();
+        AsynchronousFileChannel channel;
+        long size;
+        try {
+            channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            size = channel.size();
+        } catch(IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+            return bytes;
+        }
+        if(size > Integer.MAX_VALUE - 8) {
+            close(channel);
+            result.completeExceptionally(new IOException("File too large: "+size+" bytes"));
+            return bytes;
+        }
+        result.whenComplete((r, t) -> close(channel));
+
+        ByteBuffer target = ByteBuffer.allocate((int) size);
+        channel.read(target, 0, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer count, Void attachment) {
+                if(result.isDone()) {
+                    return;
+                }
+                if(count < 0 || !target.hasRemaining()) {
+                    close(channel);
+                    if(target.hasRemaining()) {
+                        result.completeExceptionally(new IOException("Unexpected end of file: "+path));
+                    } else {
+                        bytes.complete(target.array());
+                    }
+                    return;
+                }
+                channel.read(target, target.position(), null, this);
+            }
+
+            @Override
+            public void failed(Throwable t, Void attachment) {
+                close(channel);
+                if(!result.isDone()) {
+                    result.completeExceptionally(t);
+                }
+            }
+        });
+        return bytes;
+    }
+
+    private static void writeAsync(Path path, byte[] buffer, CompletableFuture<Void> result) {
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch(IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        result.whenComplete((r, t) -> close(channel));
+
+        ByteBuffer source = ByteBuffer.wrap(buffer);
+        channel.write(source, 0, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer count, Void attachment) {
+                if(result.isDone()) {
+                    return;
+                }
+                if(!source.hasRemaining()) {
+                    close(channel);
+                    result.complete(null);
+                    return;
+                }
+                channel.write(source, source.position(), null, this);
+            }
+
+            @Override
+            public void failed(Throwable t, Void attachment) {
+                close(channel);
+                if(!result.isDone()) {
+                    result.completeExceptionally(t);
+                }
+            }
+        });
+    }
+
+    private static void close(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch(IOException e) {
+            // nothing to do, the channel is unusable either way
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * TGAAtlas.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Sprites packed into one or more atlas pages, see TGAAtlasBuilder.
+ * On disk an atlas is an index file plus one TGA per page next to it.
+ */
+public final class TGAAtlas {
+    private static final int MAGIC = 0x54474141; // TGAA
+    private static final int VERSION = 1;
+
+    public static final class Region {
+        public final String name;
+        public final int page;
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+        // texture coordinates, upper-left origin
+        public final float u0;
+        public final float v0;
+        public final float u1;
+        public final float v1;
+
+        Region(String name, int page, int x, int y, int width, int height, int pageWidth, int pageHeight) {
+            this.name = name;
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.u0 = (float) x / pageWidth;
+            this.v0 = (float) y / pageHeight;
+            this.u1 = (float) (x + width) / pageWidth;
+            this.v1 = (float) (y + height) / pageHeight;
+        }
+    }
+
+    private final List<TGAImage> pages;
+    private final Map<String, Region> regions;
+    private final Order order;
+
+    TGAAtlas(List<TGAImage> pages, Map<String, Region> regions, Order order) {
+        this.pages = Collections.unmodifiableList(pages);
+        this.regions = Collections.unmodifiableMap(regions);
+        this.order = order;
+    }
+
+    public List<TGAImage> getPages() {
+        return pages;
+    }
+
+    public Map<String, Region> getRegions() {
+        return regions;
+    }
+
+    public Region getRegion(String name) {
+        return regions.get(name);
+    }
+
+    /**
+     * Writes index to indexPath and the pages as name_0.tga, name_1.tga, ... next to it.
+     */
+    public void write(Path indexPath) throws IOException {
+        String base = indexPath.getFileName().toString();
+        int dot = base.lastIndexOf('.');
+        if(dot > 0) {
+            base = base.substring(0, dot);
+        }
+
+        String[] names = new String[pages.size()];
+        for(int i = 0; i < names.length; i++) {
+            TGAImage page = pages.get(i);
+            names[i] = base+"_"+i+".tga";
+            Files.write(indexPath.resolveSibling(names[i]), TGAWriter.write(page.pixels, page.width, page.height, order));
+        }
+
+        try(OutputStream os = Files.newOutputStream(indexPath)) {
+            DataOutputStream out = new DataOutputStream(os);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(pages.size());
+            for(int i = 0; i < names.length; i++) {
+                out.writeUTF(names[i]);
+            }
+            out.writeInt(regions.size());
+            for(Region region : regions.values()) {
+                out.writeUTF(region.name);
+                out.writeShort(region.page);
+                out.writeShort(region.x);
+                out.writeShort(region.y);
+                out.writeShort(region.width);
+                out.writeShort(region.height);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Loads an atlas written by write(), decoding every page once, pages in parallel.
+     */
+    public static TGAAtlas read(Path indexPath, Order order) throws IOException {
+        String[] names;
+        List<int[]> entries = new ArrayList<>();
+        List<String> regionNames = new ArrayList<>();
+        try(InputStream is = Files.newInputStream(indexPath)) {
+            DataInputStream in = new DataInputStream(is);
+            if(in.readInt() != MAGIC) {
+                throw new IOException("Not an atlas index: "+indexPath);
+            }
+            int version = in.readUnsignedShort();
+            if(version != VERSION) {
+                throw new IOException("Unsupported atlas version: "+version);
+            }
+            names = new String[in.readUnsignedShort()];
+            for(int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                regionNames.add(in.readUTF());
+                int[] entry = new int[5];
+                for(int j = 0; j < entry.length; j++) {
+                    entry[j] = in.readUnsignedShort();
+                }
+                entries.add(entry);
+            }
+        }
+
+        TGAImage[] pages = new TGAImage[names.length];
+        try {
+            IntStream.range(0, names.length).parallel().forEach(i -> {
+                Path path = indexPath.resolveSibling(names[i]);
+                try {
+                    byte[] buffer = Files.readAllBytes(path);
+                    pages[i] = new TGAImage(TGAReader.getWidth(buffer), TGAReader.getHeight(buffer), TGAReader.read(buffer, order));
+                } catch(IOException e) {
+                    throw new UncheckedIOException(path.toString(), e);
+                }
+            });
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Map<String, Region> regions = new LinkedHashMap<>();
+        for(int i = 0; i < entries.size(); i++) {
+            int[] entry = entries.get(i);
+            if(entry[0] >= pages.length) {
+                throw new IOException("Region "+regionNames.get(i)+" refers to missing page "+entry[0]);
+            }
+            TGAImage page = pages[entry[0]];
+            if(entry[1] + entry[3] > page.width || entry[2] + entry[4] > page.height) {
+                throw new IOException("Region "+regionNames.get(i)+" lies outside page "+entry[0]+": "+entry[1]+","+entry[2]+" "+entry[3]+"x"+entry[4]);
+            }
+            regions.put(regionNames.get(i), new Region(regionNames.get(i), entry[0], entry[1], entry[2], entry[3], entry[4], page.width, page.height));
+        }
+        List<TGAImage> list = new ArrayList<>();
+        Collections.addAll(list, pages);
+        return new TGAAtlas(list, regions, order);
+    }
+}
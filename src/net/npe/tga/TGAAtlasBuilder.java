@@ -0,0 +1,239 @@
+/**
+ * TGAAtlasBuilder.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Packs many small TGAs into as few atlas pages as possible.
+ * Sprites are decoded in parallel and placed tallest first with a skyline bottom-left packer.
+ */
+public final class TGAAtlasBuilder {
+    private final int maxSize;
+    private final int padding;
+    private final Order order;
+    private final Map<String, Path> paths = new LinkedHashMap<>();
+    private final Map<String, TGAImage> images = new LinkedHashMap<>();
+
+    /**
+     * maxSize is the largest page width and height, padding the empty border kept between sprites.
+     */
+    public TGAAtlasBuilder(int maxSize, int padding, Order order) {
+        if(maxSize <= 0 || maxSize > 0xFFFF || padding < 0) {
+            throw new IllegalArgumentException("Invalid page size "+maxSize+" or padding "+padding);
+        }
+        this.maxSize = maxSize;
+        this.padding = padding;
+        this.order = order;
+    }
+
+    public TGAAtlasBuilder add(String name, Path path) {
+        checkName(name);
+        paths.put(name, path);
+        return this;
+    }
+
+    public TGAAtlasBuilder add(String name, TGAImage image) {
+        checkName(name);
+        images.put(name, image);
+        return this;
+    }
+
+    public TGAAtlas build() throws IOException {
+        List<Sprite> sprites = new ArrayList<>();
+        for(Map.Entry<String, TGAImage> entry : images.entrySet()) {
+            sprites.add(new Sprite(entry.getKey(), entry.getValue()));
+        }
+        sprites.addAll(load());
+
+        for(Sprite sprite : sprites) {
+            if(sprite.image.width > maxSize || sprite.image.height > maxSize) {
+                throw new IOException("Sprite "+sprite.name+" ("+sprite.image.width+"x"+sprite.image.height+") does not fit a "+maxSize+" page");
+            }
+        }
+        sprites.sort(Comparator.comparingInt((Sprite s) -> s.image.height).thenComparingInt(s -> s.image.width).reversed());
+
+        List<Skyline> skylines = new ArrayList<>();
+        for(Sprite sprite : sprites) {
+            int w = sprite.image.width + padding;
+            int h = sprite.image.height + padding;
+            for(int page = 0; ; page++) {
+                if(page == skylines.size()) {
+                    // room for the trailing padding, it is trimmed off the page below
+                    skylines.add(new Skyline(maxSize + padding));
+                }
+                int[] position = skylines.get(page).insert(w, h);
+                if(position != null) {
+                    sprite.page = page;
+                    sprite.x = position[0];
+                    sprite.y = position[1];
+                    break;
+                }
+            }
+        }
+
+        List<TGAImage> pages = new ArrayList<>();
+        for(Skyline skyline : skylines) {
+            // trim the page to the used area, the trailing padding is not needed
+            int width = Math.max(1, skyline.usedWidth - padding);
+            int height = Math.max(1, skyline.usedHeight - padding);
+            pages.add(new TGAImage(width, height, new int[width * height]));
+        }
+
+        Map<String, Sprite> placed = new LinkedHashMap<>();
+        for(Sprite sprite : sprites) {
+            TGAImage page = pages.get(sprite.page);
+            TGAImage image = sprite.image;
+            for(int y = 0; y < image.height; y++) {
+                System.arraycopy(image.pixels, image.width * y, page.pixels, page.width * (sprite.y + y) + sprite.x, image.width);
+            }
+            placed.put(sprite.name, sprite);
+        }
+
+        // keep the order sprites were added in
+        Map<String, TGAAtlas.Region> regions = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>(images.keySet());
+        names.addAll(paths.keySet());
+        for(String name : names) {
+            Sprite sprite = placed.get(name);
+            TGAImage page = pages.get(sprite.page);
+            regions.put(name, new TGAAtlas.Region(name, sprite.page, sprite.x, sprite.y, sprite.image.width, sprite.image.height, page.width, page.height));
+        }
+        return new TGAAtlas(pages, regions, order);
+    }
+
+    private List<Sprite> load() throws IOException {
+        List<Map.Entry<String, Path>> entries = new ArrayList<>(paths.entrySet());
+        try {
+            return entries.parallelStream().map(entry -> {
+                try {
+                    byte[] buffer = Files.readAllBytes(entry.getValue());
+                    int[] pixels = TGAReader.read(buffer, order);
+                    return new Sprite(entry.getKey(), new TGAImage(TGAReader.getWidth(buffer), TGAReader.getHeight(buffer), pixels));
+                } catch(IOException e) {
+                    throw new UncheckedIOException(entry.getValue().toString(), e);
+                }
+            }).collect(Collectors.toList());
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void checkName(String name) {
+        if(paths.containsKey(name) || images.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate sprite name: "+name);
+        }
+    }
+
+    private static final class Sprite {
+        final String name;
+        final TGAImage image;
+        int page;
+        int x;
+        int y;
+
+        Sprite(String name, TGAImage image) {
+            this.name = name;
+            this.image = image;
+        }
+    }
+
+    // Skyline bottom-left packer: the top edge of the packed area as segments {x, y, width}
+    private static final class Skyline {
+        final int size;
+        final List<int[]> segments = new ArrayList<>();
+        int usedWidth;
+        int usedHeight;
+
+        Skyline(int size) {
+            this.size = size;
+            segments.add(new int[] {0, 0, size});
+        }
+
+        int[] insert(int width, int height) {
+            int best = -1;
+            int bestY = Integer.MAX_VALUE;
+            int bestX = 0;
+            for(int i = 0; i < segments.size(); i++) {
+                int x = segments.get(i)[0];
+                int y = fit(i, width);
+                if(y >= 0 && y + height <= size && (y < bestY || (y == bestY && x < bestX))) {
+                    best = i;
+                    bestY = y;
+                    bestX = x;
+                }
+            }
+            if(best < 0) {
+                return null;
+            }
+
+            segments.add(best, new int[] {bestX, bestY + height, width});
+            int right = bestX + width;
+            for(int i = best + 1; i < segments.size(); ) {
+                int[] segment = segments.get(i);
+                if(segment[0] >= right) {
+                    break;
+                }
+                int end = segment[0] + segment[2];
+                if(end <= right) {
+                    segments.remove(i);
+                } else {
+                    segment[2] = end - right;
+                    segment[0] = right;
+                    break;
+                }
+            }
+            for(int i = 0; i + 1 < segments.size(); ) {
+                int[] a = segments.get(i);
+                int[] b = segments.get(i + 1);
+                if(a[1] == b[1]) {
+                    a[2] += b[2];
+                    segments.remove(i + 1);
+                } else {
+                    i++;
+                }
+            }
+            usedWidth = Math.max(usedWidth, right);
+            usedHeight = Math.max(usedHeight, bestY + height);
+            return new int[] {bestX, bestY};
+        }
+
+        // lowest y a rect of width can rest at when starting at segment i, -1 if it runs off the page
+        private int fit(int i, int width) {
+            int x = segments.get(i)[0];
+            if(x + width > size) {
+                return -1;
+            }
+            int y = 0;
+            int remaining = width;
+            for(int j = i; remaining > 0; j++) {
+                int[] segment = segments.get(j);
+                y = Math.max(y, segment[1]);
+                remaining -= segment[2];
+            }
+            return y;
+        }
+    }
+}
@@ -0,0 +1,565 @@
+/**
+ * TGABlockCompressor.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * BC1 (DXT1, opaque) and BC3 (DXT5, with alpha) block compression on the CPU.
+ * Blocks are 4x4 pixels in row major order, 8 bytes for BC1 and 16 for BC3, upper-left origin as TGAReader returns.
+ * Partial blocks at the right and bottom edge repeat the last column/row.
+ * decompress() is the reference decoder, toDDS() wraps block data in a DDS file.
+ */
+public final class TGABlockCompressor {
+
+    public enum Format {
+        BC1, // 8 bytes per block, alpha ignored
+        BC3, // 16 bytes per block, interpolated alpha
+    }
+
+    public enum Mode {
+        FAST,    // bounding box endpoints
+        QUALITY, // principal axis endpoints refined by least squares, both alpha modes tried
+    }
+
+    private static final int PARALLEL_THRESHOLD = 1024; // blocks
+
+    private TGABlockCompressor() {}
+
+    public static int getBlockSize(Format format) {
+        return (format == Format.BC1) ? 8 : 16;
+    }
+
+    public static int getCompressedSize(int width, int height, Format format) {
+        return ((width + 3) / 4) * ((height + 3) / 4) * getBlockSize(format);
+    }
+
+    /**
+     * Decodes a tga file and compresses it.
+     */
+    public static byte[] compress(byte[] buffer, Format format, Mode mode) throws IOException {
+        int[] pixels = TGAReader.read(buffer, TGAReader.ARGB);
+        return compress(pixels, TGAReader.getWidth(buffer), TGAReader.getHeight(buffer), TGAReader.ARGB, format, mode);
+    }
+
+    /**
+     * Color channels are compressed as given: premultiplied pixels stay premultiplied.
+     */
+    public static byte[] compress(int[] pixels, int width, int height, Order order, Format format, Mode mode) {
+        if(width < 0 || height < 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Invalid size: "+width+"x"+height);
+        }
+        byte[] blocks = new byte[getCompressedSize(width, height, format)];
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        IntStream rows = IntStream.range(0, blocksY);
+        if(blocksX * blocksY >= PARALLEL_THRESHOLD) {
+            rows = rows.parallel();
+        }
+        rows.forEach(by -> compressBlockRow(pixels, width, height, order, format, mode, blocks, by));
+        return blocks;
+    }
+
+    // scratch arrays of one block, allocated once per block row
+    private static final class Block {
+        final int[] r = new int[16];
+        final int[] g = new int[16];
+        final int[] b = new int[16];
+        final int[] a = new int[16];
+        final int[] indices = new int[16];
+        final int[] best = new int[16];
+        final int[] endpoints = new int[2];
+        final int[] colorPalette = new int[12];
+        final int[] alphaPalette = new int[8];
+    }
+
+    private static void compressBlockRow(int[] pixels, int width, int height, Order order, Format format, Mode mode, byte[] blocks, int by) {
+        Block block = new Block();
+        int[] r = block.r;
+        int[] g = block.g;
+        int[] b = block.b;
+        int[] a = block.a;
+        int blocksX = (width + 3) / 4;
+        int index = by * blocksX * getBlockSize(format);
+        for(int bx = 0; bx < blocksX; bx++) {
+            for(int i = 0; i < 16; i++) {
+                int x = Math.min(4 * bx + (i & 3), width - 1);
+                int y = Math.min(4 * by + (i >> 2), height - 1);
+                int c = pixels[width * y + x];
+                r[i] = (c >> order.redShift) & 0xFF;
+                g[i] = (c >> order.greenShift) & 0xFF;
+                b[i] = (c >> order.blueShift) & 0xFF;
+                a[i] = (c >> order.alphaShift) & 0xFF;
+            }
+            if(format == Format.BC3) {
+                encodeAlphaBlock(block, mode, blocks, index);
+                index += 8;
+            }
+            encodeColorBlock(block, mode, blocks, index);
+            index += 8;
+        }
+    }
+
+    private static void encodeColorBlock(Block block, Mode mode, byte[] out, int index) {
+        int[] r = block.r;
+        int[] g = block.g;
+        int[] b = block.b;
+        int[] endpoints = block.endpoints;
+        int[] indices = block.indices;
+        int[] best = block.best;
+
+        int minR = 255;
+        int minG = 255;
+        int minB = 255;
+        int maxR = 0;
+        int maxG = 0;
+        int maxB = 0;
+        for(int i = 0; i < 16; i++) {
+            minR = Math.min(minR, r[i]);
+            maxR = Math.max(maxR, r[i]);
+            minG = Math.min(minG, g[i]);
+            maxG = Math.max(maxG, g[i]);
+            minB = Math.min(minB, b[i]);
+            maxB = Math.max(maxB, b[i]);
+        }
+
+        // pick the box diagonal the colors actually lie on
+        int midR = (minR + maxR) >> 1;
+        int midG = (minG + maxG) >> 1;
+        int midB = (minB + maxB) >> 1;
+        int covG = 0;
+        int covB = 0;
+        for(int i = 0; i < 16; i++) {
+            covG += (r[i] - midR) * (g[i] - midG);
+            covB += (r[i] - midR) * (b[i] - midB);
+        }
+        if(covG < 0) {
+            int t = minG;
+            minG = maxG;
+            maxG = t;
+        }
+        if(covB < 0) {
+            int t = minB;
+            minB = maxB;
+            maxB = t;
+        }
+
+        // inset by 1/16 of the range, the outer palette entries are rarely hit exactly
+        int insetR = (maxR - minR) >> 4;
+        int insetG = (maxG - minG) >> 4;
+        int insetB = (maxB - minB) >> 4;
+        int c0 = pack565(maxR - insetR, maxG - insetG, maxB - insetB);
+        int c1 = pack565(minR + insetR, minG + insetG, minB + insetB);
+        long bestError = selectColorIndices(c0, c1, block, best);
+        int best0 = c0;
+        int best1 = c1;
+
+        if(mode == Mode.QUALITY && bestError > 0) {
+            if(fitPrincipalAxis(r, g, b, endpoints)) {
+                long error = selectColorIndices(endpoints[0], endpoints[1], block, indices);
+                if(error < bestError) {
+                    bestError = error;
+                    best0 = endpoints[0];
+                    best1 = endpoints[1];
+                    System.arraycopy(indices, 0, best, 0, 16);
+                }
+            }
+            for(int pass = 0; pass < 2 && bestError > 0; pass++) {
+                if(!fitLeastSquares(r, g, b, best, endpoints)) {
+                    break;
+                }
+                long error = selectColorIndices(endpoints[0], endpoints[1], block, indices);
+                if(error >= bestError) {
+                    break;
+                }
+                bestError = error;
+                best0 = endpoints[0];
+                best1 = endpoints[1];
+                System.arraycopy(indices, 0, best, 0, 16);
+            }
+        }
+
+        // c0 > c1 selects the four color mode, equal endpoints only use index 0
+        int bits = 0;
+        if(best0 != best1) {
+            int flip = 0;
+            if(best0 < best1) {
+                int t = best0;
+                best0 = best1;
+                best1 = t;
+                flip = 1;
+            }
+            for(int i = 0; i < 16; i++) {
+                bits |= (best[i] ^ flip) << (2 * i);
+            }
+        }
+        out[index] = (byte) best0;
+        out[index + 1] = (byte) (best0 >> 8);
+        out[index + 2] = (byte) best1;
+        out[index + 3] = (byte) (best1 >> 8);
+        out[index + 4] = (byte) bits;
+        out[index + 5] = (byte) (bits >> 8);
+        out[index + 6] = (byte) (bits >> 16);
+        out[index + 7] = (byte) (bits >> 24);
+    }
+
+    // endpoints at the extremes of the colors projected on their principal axis
+    private static boolean fitPrincipalAxis(int[] r, int[] g, int[] b, int[] endpoints) {
+        float meanR = 0;
+        float meanG = 0;
+        float meanB = 0;
+        for(int i = 0; i < 16; i++) {
+            meanR += r[i];
+            meanG += g[i];
+            meanB += b[i];
+        }
+        meanR /= 16;
+        meanG /= 16;
+        meanB /= 16;
+
+        // covariance matrix
+        float rr = 0;
+        float rg = 0;
+        float rb = 0;
+        float gg = 0;
+        float gb = 0;
+        float bb = 0;
+        for(int i = 0; i < 16; i++) {
+            float dr = r[i] - meanR;
+            float dg = g[i] - meanG;
+            float db = b[i] - meanB;
+            rr += dr * dr;
+            rg += dr * dg;
+            rb += dr * db;
+            gg += dg * dg;
+            gb += dg * db;
+            bb += db * db;
+        }
+
+        // power iteration
+        float vr = 1;
+        float vg = 1;
+        float vb = 1;
+        for(int k = 0; k < 8; k++) {
+            float nr = rr * vr + rg * vg + rb * vb;
+            float ng = rg * vr + gg * vg + gb * vb;
+            float nb = rb * vr + gb * vg + bb * vb;
+            float length = Math.max(Math.abs(nr), Math.max(Math.abs(ng), Math.abs(nb)));
+            if(length == 0) {
+                return false;
+            }
+            vr = nr / length;
+            vg = ng / length;
+            vb = nb / length;
+        }
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for(int i = 0; i < 16; i++) {
+            float t = (r[i] - meanR) * vr + (g[i] - meanG) * vg + (b[i] - meanB) * vb;
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+        float norm = vr * vr + vg * vg + vb * vb;
+        min /= norm;
+        max /= norm;
+        endpoints[0] = pack565(meanR + max * vr, meanG + max * vg, meanB + max * vb);
+        endpoints[1] = pack565(meanR + min * vr, meanG + min * vg, meanB + min * vb);
+        return true;
+    }
+
+    // endpoints minimizing the squared error for fixed indices
+    private static boolean fitLeastSquares(int[] r, int[] g, int[] b, int[] indices, int[] endpoints) {
+        float aa = 0;
+        float ab = 0;
+        float bb = 0;
+        float ar = 0;
+        float ag = 0;
+        float abl = 0;
+        float br = 0;
+        float bg = 0;
+        float bbl = 0;
+        for(int i = 0; i < 16; i++) {
+            float w0 = COLOR_WEIGHTS[indices[i]];
+            float w1 = 1 - w0;
+            aa += w0 * w0;
+            ab += w0 * w1;
+            bb += w1 * w1;
+            ar += w0 * r[i];
+            ag += w0 * g[i];
+            abl += w0 * b[i];
+            br += w1 * r[i];
+            bg += w1 * g[i];
+            bbl += w1 * b[i];
+        }
+        float det = aa * bb - ab * ab;
+        if(Math.abs(det) < 1e-6f) {
+            return false;
+        }
+        float f = 1 / det;
+        endpoints[0] = pack565((ar * bb - br * ab) * f, (ag * bb - bg * ab) * f, (abl * bb - bbl * ab) * f);
+        endpoints[1] = pack565((br * aa - ar * ab) * f, (bg * aa - ag * ab) * f, (bbl * aa - abl * ab) * f);
+        return true;
+    }
+
+    // weight of c0 for index 0..3 in four color mode
+    private static final float[] COLOR_WEIGHTS = {1f, 0f, 2f / 3, 1f / 3};
+
+    private static long selectColorIndices(int c0, int c1, Block block, int[] indices) {
+        int[] r = block.r;
+        int[] g = block.g;
+        int[] b = block.b;
+        int[] palette = block.colorPalette;
+        createColorPalette(c0, c1, true, palette);
+        long error = 0;
+        for(int i = 0; i < 16; i++) {
+            int bestIndex = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for(int j = 0; j < 4; j++) {
+                int dr = r[i] - palette[3 * j];
+                int dg = g[i] - palette[3 * j + 1];
+                int db = b[i] - palette[3 * j + 2];
+                int distance = dr * dr + dg * dg + db * db;
+                if(distance < bestDistance) {
+                    bestDistance = distance;
+                    bestIndex = j;
+                }
+            }
+            indices[i] = bestIndex;
+            error += bestDistance;
+        }
+        return error;
+    }
+
+    private static void createColorPalette(int c0, int c1, boolean fourColors, int[] palette) {
+        palette[0] = expand5(c0 >> 11);
+        palette[1] = expand6((c0 >> 5) & 0x3F);
+        palette[2] = expand5(c0 & 0x1F);
+        palette[3] = expand5(c1 >> 11);
+        palette[4] = expand6((c1 >> 5) & 0x3F);
+        palette[5] = expand5(c1 & 0x1F);
+        for(int k = 0; k < 3; k++) {
+            if(fourColors) {
+                palette[6 + k] = (2 * palette[k] + palette[3 + k]) / 3;
+                palette[9 + k] = (palette[k] + 2 * palette[3 + k]) / 3;
+            } else {
+                palette[6 + k] = (palette[k] + palette[3 + k]) / 2;
+                palette[9 + k] = 0;
+            }
+        }
+    }
+
+    private static int pack565(float r, float g, float b) {
+        int r5 = (clamp(r) * 31 + 127) / 255;
+        int g6 = (clamp(g) * 63 + 127) / 255;
+        int b5 = (clamp(b) * 31 + 127) / 255;
+        return (r5 << 11) | (g6 << 5) | b5;
+    }
+
+    private static int clamp(float v) {
+        return Math.max(0, Math.min(255, Math.round(v)));
+    }
+
+    private static int expand5(int v) {
+        return (v << 3) | (v >> 2);
+    }
+
+    private static int expand6(int v) {
+        return (v << 2) | (v >> 4);
+    }
+
+    private static void encodeAlphaBlock(Block block, Mode mode, byte[] out, int index) {
+        int[] a = block.a;
+        int[] indices = block.indices;
+        int[] best = block.best;
+
+        int min = 255;
+        int max = 0;
+        int innerMin = 255; // ignoring 0 and 255, which the six alpha mode has for free
+        int innerMax = 0;
+        for(int i = 0; i < 16; i++) {
+            min = Math.min(min, a[i]);
+            max = Math.max(max, a[i]);
+            if(a[i] != 0 && a[i] != 255) {
+                innerMin = Math.min(innerMin, a[i]);
+                innerMax = Math.max(innerMax, a[i]);
+            }
+        }
+
+        // a0 > a1 selects the eight alpha mode, a0 <= a1 the six alpha mode with 0 and 255
+        int a0 = max;
+        int a1 = min;
+        long bestError = 0;
+        if(a0 == a1) {
+            Arrays.fill(best, 0);
+        } else {
+            bestError = selectAlphaIndices(a0, a1, block, best);
+        }
+        if(mode == Mode.QUALITY && bestError > 0) {
+            if(innerMin <= innerMax) {
+                long error = selectAlphaIndices(innerMin, innerMax, block, indices);
+                if(error < bestError) {
+                    bestError = error;
+                    a0 = innerMin;
+                    a1 = innerMax;
+                    System.arraycopy(indices, 0, best, 0, 16);
+                }
+            }
+            if(a0 > a1) {
+                for(int inset = 1; inset <= 4 && max - inset > min + inset; inset++) {
+                    long error = selectAlphaIndices(max - inset, min + inset, block, indices);
+                    if(error < bestError) {
+                        bestError = error;
+                        a0 = max - inset;
+                        a1 = min + inset;
+                        System.arraycopy(indices, 0, best, 0, 16);
+                    }
+                }
+            }
+        }
+
+        long bits = 0;
+        for(int i = 0; i < 16; i++) {
+            bits |= (long) best[i] << (3 * i);
+        }
+        out[index] = (byte) a0;
+        out[index + 1] = (byte) a1;
+        for(int k = 0; k < 6; k++) {
+            out[index + 2 + k] = (byte) (bits >> (8 * k));
+        }
+    }
+
+    private static long selectAlphaIndices(int a0, int a1, Block block, int[] indices) {
+        int[] a = block.a;
+        int[] palette = block.alphaPalette;
+        createAlphaPalette(a0, a1, palette);
+        long error = 0;
+        for(int i = 0; i < 16; i++) {
+            int bestIndex = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for(int j = 0; j < 8; j++) {
+                int d = a[i] - palette[j];
+                if(d * d < bestDistance) {
+                    bestDistance = d * d;
+                    bestIndex = j;
+                }
+            }
+            indices[i] = bestIndex;
+            error += bestDistance;
+        }
+        return error;
+    }
+
+    private static void createAlphaPalette(int a0, int a1, int[] palette) {
+        palette[0] = a0;
+        palette[1] = a1;
+        if(a0 > a1) {
+            for(int i = 1; i <= 6; i++) {
+                palette[1 + i] = ((7 - i) * a0 + i * a1) / 7;
+            }
+        } else {
+            for(int i = 1; i <= 4; i++) {
+                palette[1 + i] = ((5 - i) * a0 + i * a1) / 5;
+            }
+            palette[6] = 0;
+            palette[7] = 255;
+        }
+    }
+
+    /**
+     * Reference decoder, pixels are packed by order. BC1 decodes fully opaque unless a block uses the three color mode.
+     */
+    public static int[] decompress(byte[] blocks, int offset, int width, int height, Order order, Format format) {
+        if(width < 0 || height < 0 || blocks.length - offset < getCompressedSize(width, height, format)) {
+            throw new IllegalArgumentException("Invalid size: "+width+"x"+height);
+        }
+        int[] pixels = new int[width * height];
+        int[] palette = new int[12];
+        int[] alphas = new int[8];
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        int index = offset;
+        for(int by = 0; by < blocksY; by++) {
+            for(int bx = 0; bx < blocksX; bx++) {
+                long alphaBits = 0;
+                if(format == Format.BC3) {
+                    createAlphaPalette(blocks[index] & 0xFF, blocks[index + 1] & 0xFF, alphas);
+                    for(int k = 0; k < 6; k++) {
+                        alphaBits |= (long) (blocks[index + 2 + k] & 0xFF) << (8 * k);
+                    }
+                    index += 8;
+                }
+                int c0 = (blocks[index] & 0xFF) | ((blocks[index + 1] & 0xFF) << 8);
+                int c1 = (blocks[index + 2] & 0xFF) | ((blocks[index + 3] & 0xFF) << 8);
+                int bits = (blocks[index + 4] & 0xFF) | ((blocks[index + 5] & 0xFF) << 8) | ((blocks[index + 6] & 0xFF) << 16) | ((blocks[index + 7] & 0xFF) << 24);
+                index += 8;
+                boolean fourColors = (format == Format.BC3) || c0 > c1;
+                createColorPalette(c0, c1, fourColors, palette);
+
+                for(int i = 0; i < 16; i++) {
+                    int x = 4 * bx + (i & 3);
+                    int y = 4 * by + (i >> 2);
+                    if(x >= width || y >= height) {
+                        continue;
+                    }
+                    int j = (bits >>> (2 * i)) & 3;
+                    int alpha;
+                    if(format == Format.BC3) {
+                        alpha = alphas[(int) (alphaBits >>> (3 * i)) & 7];
+                    } else {
+                        alpha = (!fourColors && j == 3) ? 0 : 0xFF;
+                    }
+                    pixels[width * y + x] = (palette[3 * j] << order.redShift) | (palette[3 * j + 1] << order.greenShift) | (palette[3 * j + 2] << order.blueShift) | (alpha << order.alphaShift);
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static final int DDS_HEADER_SIZE = 128; // magic and DDS_HEADER
+
+    /**
+     * Wraps compressed blocks in a single level DDS file.
+     */
+    public static byte[] toDDS(byte[] blocks, int width, int height, Format format) {
+        int size = getCompressedSize(width, height, format);
+        if(width <= 0 || height <= 0 || blocks.length < size) {
+            throw new IllegalArgumentException("Invalid size: "+width+"x"+height);
+        }
+        byte[] buffer = new byte[DDS_HEADER_SIZE + size];
+        putInt(buffer, 0, 0x20534444);      // "DDS "
+        putInt(buffer, 4, 124);             // dwSize
+        putInt(buffer, 8, 0x1 | 0x2 | 0x4 | 0x1000 | 0x80000); // CAPS, HEIGHT, WIDTH, PIXELFORMAT, LINEARSIZE
+        putInt(buffer, 12, height);
+        putInt(buffer, 16, width);
+        putInt(buffer, 20, size);           // dwPitchOrLinearSize
+        putInt(buffer, 76, 32);             // ddspf.dwSize
+        putInt(buffer, 80, 0x4);            // DDPF_FOURCC
+        putInt(buffer, 84, (format == Format.BC1) ? 0x31545844 : 0x35545844); // "DXT1", "DXT5"
+        putInt(buffer, 108, 0x1000);        // DDSCAPS_TEXTURE
+        System.arraycopy(blocks, 0, buffer, DDS_HEADER_SIZE, size);
+        return buffer;
+    }
+
+    private static void putInt(byte[] buffer, int index, int value) {
+        buffer[index] = (byte) value;
+        buffer[index + 1] = (byte) (value >> 8);
+        buffer[index + 2] = (byte) (value >> 16);
+        buffer[index + 3] = (byte) (value >> 24);
+    }
+}
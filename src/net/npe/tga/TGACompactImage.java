@@ -0,0 +1,82 @@
+/**
+ * TGACompactImage.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+/**
+ * Colormapped or grayscale image kept at its stored size, see TGAReader.readCompact().
+ * data holds one byte per pixel in upper-left origin: a colormap index, or the gray level.
+ * 16 bit grayscale stores gray and alpha, two bytes per pixel, and has no palette.
+ * Packed pixels are only computed when asked for.
+ */
+public final class TGACompactImage {
+    public final int width;
+    public final int height;
+    public final byte[] data;
+    public final int pixelSize; // bytes per pixel in data, 1 or 2
+    public final int[] palette; // 256 packed colors by index or gray level, null for 16 bit grayscale
+    public final Order order;
+
+    TGACompactImage(int width, int height, byte[] data, int pixelSize, int[] palette, Order order) {
+        this.width = width;
+        this.height = height;
+        this.data = data;
+        this.pixelSize = pixelSize;
+        this.palette = palette;
+        this.order = order;
+    }
+
+    // colormap index or gray level of a pixel
+    public int getIndex(int x, int y) {
+        return data[pixelSize * (width * y + x)] & 0xFF;
+    }
+
+    public int getPixel(int x, int y) {
+        int i = width * y + x;
+        if(palette != null) {
+            return palette[data[i] & 0xFF];
+        }
+        return getGrayAlpha(data[2 * i] & 0xFF, data[2 * i + 1] & 0xFF);
+    }
+
+    public void getRow(int y, int[] pixels, int offset) {
+        int i = width * y;
+        if(palette != null) {
+            for(int x = 0; x < width; x++) {
+                pixels[offset + x] = palette[data[i + x] & 0xFF];
+            }
+        } else {
+            for(int x = 0; x < width; x++) {
+                pixels[offset + x] = getGrayAlpha(data[2 * (i + x)] & 0xFF, data[2 * (i + x) + 1] & 0xFF);
+            }
+        }
+    }
+
+    // the same pixels TGAReader.read() returns for the same order
+    public int[] toPixels() {
+        int[] pixels = new int[width * height];
+        for(int y = 0; y < height; y++) {
+            getRow(y, pixels, width * y);
+        }
+        return pixels;
+    }
+
+    private int getGrayAlpha(int e, int a) {
+        if(order.premultiplied) {
+            e = TGAReader.premultiply(e, a);
+        }
+        return (e << order.redShift) | (e << order.greenShift) | (e << order.blueShift) | (a << order.alphaShift);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * TGAFrameEncoder.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.util.Arrays;
+
+/**
+ * Encodes a sequence of same-sized frames, e.g. repeated framebuffer captures.
+ * The previous frame and the RLE packets of every row are kept, so only rows that changed
+ * since the last frame are re-encoded; unchanged rows are copied from the cache.
+ * Every returned buffer is a complete TGA, identical to TGAWriter.write() for the same pixels.
+ */
+public final class TGAFrameEncoder {
+    private final int width;
+    private final int height;
+    private final Order order;
+    private final Order straightOrder;
+    private final EncodeType encodeType;
+
+    private final int[] previous;
+    private final byte[][] rows; // encoded RLE packets per row
+    private final boolean[] rowAlpha;
+    private final byte[] scratch;
+    private final int[] straight;
+    private boolean first = true;
+    private int elementCount;
+    private int changedRows;
+
+    public TGAFrameEncoder(int width, int height, Order order) {
+        this(width, height, order, EncodeType.AUTO);
+    }
+
+    public TGAFrameEncoder(int width, int height, Order order, EncodeType encodeType) {
+        if(width < 0 || width > 0xFFFF || height < 0 || height > 0xFFFF) {
+            throw new IllegalArgumentException("Unsupported size: "+width+"x"+height);
+        }
+        this.width = width;
+        this.height = height;
+        this.order = order;
+        this.straightOrder = TGAWriter.straightOrder(order);
+        this.encodeType = encodeType;
+        this.previous = new int[width * height];
+        this.rows = new byte[height][];
+        this.rowAlpha = new boolean[height];
+        // worst case RLE is one packet header per pixel
+        this.scratch = new byte[5 * width];
+        this.straight = order.premultiplied ? new int[width] : null;
+    }
+
+    public byte[] encode(int[] pixels) {
+        if(pixels.length < width * height) {
+            throw new IllegalArgumentException("Expected "+(width * height)+" pixels: "+pixels.length);
+        }
+
+        // find changed rows, and whether the frame needs an alpha channel
+        boolean[] changed = new boolean[height];
+        changedRows = 0;
+        boolean alpha = false;
+        for(int y = 0; y < height; y++) {
+            int offset = width * y;
+            if(first || !rowEquals(pixels, previous, offset, width)) {
+                changed[y] = true;
+                changedRows++;
+                System.arraycopy(pixels, offset, previous, offset, width);
+                rowAlpha[y] = hasAlpha(pixels, offset);
+            }
+            alpha |= rowAlpha[y];
+        }
+        first = false;
+
+        int frameElementCount = alpha ? 4 : 3;
+        if(frameElementCount != elementCount) {
+            // the pixel size changed, every cached row is stale
+            elementCount = frameElementCount;
+            Arrays.fill(changed, true);
+            changedRows = height;
+        }
+
+        if(encodeType != EncodeType.NONE) {
+            int rleSize = 0;
+            for(int y = 0; y < height; y++) {
+                if(changed[y]) {
+                    rows[y] = encodeRow(y);
+                }
+                rleSize += rows[y].length;
+            }
+            int rawSize = elementCount * width * height;
+            if(encodeType == EncodeType.RLE || rleSize < rawSize) {
+                return assemble(true, rleSize);
+            }
+        }
+        return assemble(false, elementCount * width * height);
+    }
+
+    // number of rows re-encoded by the last encode()
+    public int getChangedRows() {
+        return changedRows;
+    }
+
+    private byte[] encodeRow(int y) {
+        int[] source = previous;
+        int offset = width * y;
+        if(straight != null) {
+            TGAWriter.unpremultiplyRow(previous, offset, width, order, straight);
+            source = straight;
+            offset = 0;
+        }
+        int length = TGAWriter.encodeRLE(source, offset, width, elementCount, straightOrder, scratch, 0);
+        return Arrays.copyOf(scratch, length);
+    }
+
+    private byte[] assemble(boolean encoding, int dataSize) {
+        byte[] buffer = new byte[18 + dataSize + TGAWriter.FOOTER_LENGTH];
+        int index = TGAWriter.writeHeader(buffer, 0, width, height, elementCount, encoding);
+        for(int y = 0; y < height; y++) {
+            if(encoding) {
+                System.arraycopy(rows[y], 0, buffer, index, rows[y].length);
+                index += rows[y].length;
+            } else if(straight != null) {
+                TGAWriter.unpremultiplyRow(previous, width * y, width, order, straight);
+                index = TGAWriter.writeRaw(straight, 0, width, elementCount, straightOrder, buffer, index);
+            } else {
+                index = TGAWriter.writeRaw(previous, width * y, width, elementCount, order, buffer, index);
+            }
+        }
+        TGAWriter.writeFooter(buffer, index);
+        return buffer;
+    }
+
+    private boolean hasAlpha(int[] pixels, int offset) {
+        for(int i = offset; i < offset + width; i++) {
+            // premultiplied or not, opaque is 0xFF
+            if(((pixels[i] >> order.alphaShift) & 0xFF) != 0xFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean rowEquals(int[] a, int[] b, int offset, int length) {
+        for(int i = offset; i < offset + length; i++) {
+            if(a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
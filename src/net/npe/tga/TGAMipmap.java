@@ -0,0 +1,241 @@
+/**
+ * TGAMipmap.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+/**
+ * Full mipmap chain down to 1x1 in one contiguous array, level 0 first.
+ * Level i starts at offsets[i] and has widths[i] * heights[i] pixels, ready for glTexImage2D per level.
+ * Levels are built with a box filter, 2x2 for even sizes and 3 area weighted taps for odd sizes;
+ * color is weighted by alpha so transparent texels don't bleed.
+ */
+public final class TGAMipmap {
+    private static final int PARALLEL_THRESHOLD = 64 * 1024; // destination pixels per level
+
+    public final int[] pixels;
+    public final int[] offsets;
+    public final int[] widths;
+    public final int[] heights;
+
+    private TGAMipmap(int width, int height) {
+        int levels = 1;
+        for(int w = width, h = height; w > 1 || h > 1; w = Math.max(1, w >> 1), h = Math.max(1, h >> 1)) {
+            levels++;
+        }
+        offsets = new int[levels];
+        widths = new int[levels];
+        heights = new int[levels];
+
+        long total = 0;
+        for(int i = 0, w = width, h = height; i < levels; i++, w = Math.max(1, w >> 1), h = Math.max(1, h >> 1)) {
+            offsets[i] = (int) total;
+            widths[i] = w;
+            heights[i] = h;
+            total += (long) w * h;
+        }
+        if(total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Image too large: "+width+"x"+height);
+        }
+        pixels = new int[(int) total];
+    }
+
+    public int getLevelCount() {
+        return offsets.length;
+    }
+
+    /**
+     * Decodes straight into level 0 of the chain and builds the other levels from it.
+     */
+    public static TGAMipmap read(byte[] buffer, Order order) throws IOException {
+        TGAReader.validate(buffer);
+        int width = TGAReader.getWidth(buffer);
+        int height = TGAReader.getHeight(buffer);
+        if(width == 0 || height == 0) {
+            throw new IOException("Empty image: "+width+"x"+height);
+        }
+        TGAMipmap mipmap;
+        try {
+            mipmap = new TGAMipmap(width, height);
+        } catch(IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        TGAReader.read(buffer, order, mipmap.pixels, 0, TGAReader.NOT_CANCELLED);
+        mipmap.generate(order);
+        return mipmap;
+    }
+
+    public static TGAMipmap create(int[] pixels, int width, int height, Order order) {
+        if(width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Invalid size: "+width+"x"+height);
+        }
+        TGAMipmap mipmap = new TGAMipmap(width, height);
+        System.arraycopy(pixels, 0, mipmap.pixels, 0, width * height);
+        mipmap.generate(order);
+        return mipmap;
+    }
+
+    private void generate(Order order) {
+        for(int level = 1; level < offsets.length; level++) {
+            int src = offsets[level - 1];
+            int srcWidth = widths[level - 1];
+            int srcHeight = heights[level - 1];
+            int dst = offsets[level];
+            int width = widths[level];
+            IntStream rows = IntStream.range(0, heights[level]);
+            if(width * heights[level] >= PARALLEL_THRESHOLD) {
+                rows = rows.parallel();
+            }
+            if(isHalvable(srcWidth) && isHalvable(srcHeight)) {
+                rows.forEach(y -> downsampleRow(pixels, src, srcWidth, srcHeight, dst, width, y, order));
+            } else {
+                rows.forEach(y -> downsampleRowOdd(pixels, src, srcWidth, srcHeight, dst, width, y, order));
+            }
+        }
+    }
+
+    private static boolean isHalvable(int size) {
+        return (size & 1) == 0 || size == 1;
+    }
+
+    // even source sizes, a size of 1 clamps the second tap to the only row/column
+    private static void downsampleRow(int[] pixels, int src, int srcWidth, int srcHeight, int dst, int width, int y, Order order) {
+        int rs = order.redShift;
+        int gs = order.greenShift;
+        int bs = order.blueShift;
+        int as = order.alphaShift;
+        boolean premultiplied = order.premultiplied;
+
+        int row0 = src + srcWidth * Math.min(2 * y, srcHeight - 1);
+        int row1 = src + srcWidth * Math.min(2 * y + 1, srcHeight - 1);
+        int index = dst + width * y;
+        for(int x = 0; x < width; x++) {
+            int x0 = Math.min(2 * x, srcWidth - 1);
+            int x1 = Math.min(2 * x + 1, srcWidth - 1);
+            int c0 = pixels[row0 + x0];
+            int c1 = pixels[row0 + x1];
+            int c2 = pixels[row1 + x0];
+            int c3 = pixels[row1 + x1];
+
+            int a0 = (c0 >> as) & 0xFF;
+            int a1 = (c1 >> as) & 0xFF;
+            int a2 = (c2 >> as) & 0xFF;
+            int a3 = (c3 >> as) & 0xFF;
+            int alpha = a0 + a1 + a2 + a3;
+
+            int r;
+            int g;
+            int b;
+            if(premultiplied || alpha == 0 || alpha == 4 * 0xFF) {
+                r = (((c0 >> rs) & 0xFF) + ((c1 >> rs) & 0xFF) + ((c2 >> rs) & 0xFF) + ((c3 >> rs) & 0xFF) + 2) >> 2;
+                g = (((c0 >> gs) & 0xFF) + ((c1 >> gs) & 0xFF) + ((c2 >> gs) & 0xFF) + ((c3 >> gs) & 0xFF) + 2) >> 2;
+                b = (((c0 >> bs) & 0xFF) + ((c1 >> bs) & 0xFF) + ((c2 >> bs) & 0xFF) + ((c3 >> bs) & 0xFF) + 2) >> 2;
+            } else {
+                int half = alpha >> 1;
+                r = (((c0 >> rs) & 0xFF) * a0 + ((c1 >> rs) & 0xFF) * a1 + ((c2 >> rs) & 0xFF) * a2 + ((c3 >> rs) & 0xFF) * a3 + half) / alpha;
+                g = (((c0 >> gs) & 0xFF) * a0 + ((c1 >> gs) & 0xFF) * a1 + ((c2 >> gs) & 0xFF) * a2 + ((c3 >> gs) & 0xFF) * a3 + half) / alpha;
+                b = (((c0 >> bs) & 0xFF) * a0 + ((c1 >> bs) & 0xFF) * a1 + ((c2 >> bs) & 0xFF) * a2 + ((c3 >> bs) & 0xFF) * a3 + half) / alpha;
+            }
+            int a = (alpha + 2) >> 2;
+            pixels[index++] = (r << rs) | (g << gs) | (b << bs) | (a << as);
+        }
+    }
+
+    // an odd size 2n+1 shrinks to n, texel i covers source [i * (2n+1) / n, (i+1) * (2n+1) / n):
+    // taps 2i, 2i+1, 2i+2 weighted (n-i, n, i+1) / (2n+1) by the area they cover
+    private static void downsampleRowOdd(int[] pixels, int src, int srcWidth, int srcHeight, int dst, int width, int y, Order order) {
+        int rs = order.redShift;
+        int gs = order.greenShift;
+        int bs = order.blueShift;
+        int as = order.alphaShift;
+        boolean premultiplied = order.premultiplied;
+
+        int height = Math.max(1, srcHeight >> 1);
+        int[] weightX = new int[3];
+        int[] weightY = new int[3];
+        getWeights(y, srcHeight, height, weightY);
+        int index = dst + width * y;
+        for(int x = 0; x < width; x++) {
+            getWeights(x, srcWidth, width, weightX);
+            long sum = 0;
+            long sumA = 0;
+            long sumR = 0;
+            long sumG = 0;
+            long sumB = 0;
+            long sumAR = 0;
+            long sumAG = 0;
+            long sumAB = 0;
+            for(int ty = 0; ty < 3; ty++) {
+                if(weightY[ty] == 0) {
+                    continue;
+                }
+                int row = src + srcWidth * Math.min(2 * y + ty, srcHeight - 1);
+                for(int tx = 0; tx < 3; tx++) {
+                    long w = (long) weightY[ty] * weightX[tx];
+                    if(w == 0) {
+                        continue;
+                    }
+                    int c = pixels[row + Math.min(2 * x + tx, srcWidth - 1)];
+                    int a = (c >> as) & 0xFF;
+                    int r = (c >> rs) & 0xFF;
+                    int g = (c >> gs) & 0xFF;
+                    int b = (c >> bs) & 0xFF;
+                    sum += w;
+                    sumA += a * w;
+                    sumR += r * w;
+                    sumG += g * w;
+                    sumB += b * w;
+                    sumAR += a * r * w;
+                    sumAG += a * g * w;
+                    sumAB += a * b * w;
+                }
+            }
+
+            int r;
+            int g;
+            int b;
+            if(premultiplied || sumA == 0) {
+                r = (int) ((sumR + sum / 2) / sum);
+                g = (int) ((sumG + sum / 2) / sum);
+                b = (int) ((sumB + sum / 2) / sum);
+            } else {
+                r = (int) ((sumAR + sumA / 2) / sumA);
+                g = (int) ((sumAG + sumA / 2) / sumA);
+                b = (int) ((sumAB + sumA / 2) / sumA);
+            }
+            int a = (int) ((sumA + sum / 2) / sum);
+            pixels[index++] = (r << rs) | (g << gs) | (b << bs) | (a << as);
+        }
+    }
+
+    // weights of the taps 2i, 2i+1, 2i+2 along one axis
+    private static void getWeights(int i, int srcSize, int size, int[] weights) {
+        if(srcSize == 1) {
+            weights[0] = 1;
+            weights[1] = 0;
+            weights[2] = 0;
+        } else if((srcSize & 1) == 0) {
+            weights[0] = 1;
+            weights[1] = 1;
+            weights[2] = 0;
+        } else {
+            weights[0] = size - i;
+            weights[1] = size;
+            weights[2] = i + 1;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * TGAPixelView.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of the stored pixels of an uncompressed RGB or grayscale TGA, see TGAReader.view().
+ * Rows are in file order: the first row is the bottom one unless upperOrigin is set,
+ * pixels run right to left if rightOrigin is set.
+ */
+public final class TGAPixelView {
+    public final ByteBuffer pixels;
+    public final int width;
+    public final int height;
+    public final int rowStride; // bytes from one stored row to the next
+    public final ByteLayout layout; // BYTES_BGRA, BYTES_BGR, BYTES_LUMINANCE or BYTES_LUMINANCE_ALPHA
+    public final boolean upperOrigin;
+    public final boolean rightOrigin;
+
+    TGAPixelView(ByteBuffer pixels, int width, int height, int rowStride, ByteLayout layout, boolean upperOrigin, boolean rightOrigin) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.rowStride = rowStride;
+        this.layout = layout;
+        this.upperOrigin = upperOrigin;
+        this.rightOrigin = rightOrigin;
+    }
+}
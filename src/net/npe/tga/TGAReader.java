@@ -16,19 +16,36 @@
 package net.npe.tga;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 public final class TGAReader {
-    private static final int COLORMAP = 1;
-    private static final int RGB = 2;
-    private static final int GRAYSCALE = 3;
-    private static final int COLORMAP_RLE = 9;
-    private static final int RGB_RLE = 10;
-    private static final int GRAYSCALE_RLE = 11;
-    private static final int RIGHT_ORIGIN = 0x10;
-    private static final int UPPER_ORIGIN = 0x20;
+    static final int COLORMAP = 1;
+    static final int RGB = 2;
+    static final int GRAYSCALE = 3;
+    static final int COLORMAP_RLE = 9;
+    static final int RGB_RLE = 10;
+    static final int GRAYSCALE_RLE = 11;
+    static final int RIGHT_ORIGIN = 0x10;
+    static final int UPPER_ORIGIN = 0x20;
 
     public static final Order ARGB = new Order(16, 8, 0, 24);
     public static final Order ABGR = new Order(0, 8, 16, 24);
+    public static final Order ARGB_PRE = new Order(16, 8, 0, 24, true);
+    public static final Order ABGR_PRE = new Order(0, 8, 16, 24, true);
+
+    public static final ByteLayout BYTES_RGBA = new ByteLayout(4, 0, 1, 2, 3, -1);
+    public static final ByteLayout BYTES_BGRA = new ByteLayout(4, 2, 1, 0, 3, -1);
+    public static final ByteLayout BYTES_RGB = new ByteLayout(3, 0, 1, 2, -1, -1);
+    public static final ByteLayout BYTES_BGR = new ByteLayout(3, 2, 1, 0, -1, -1);
+    public static final ByteLayout BYTES_LUMINANCE = new ByteLayout(1, -1, -1, -1, -1, 0);
+    public static final ByteLayout BYTES_LUMINANCE_ALPHA = new ByteLayout(2, -1, -1, -1, 1, 0);
+    public static final ByteLayout BYTES_RGBA_PRE = new ByteLayout(4, 0, 1, 2, 3, -1, true);
+    public static final ByteLayout BYTES_BGRA_PRE = new ByteLayout(4, 2, 1, 0, 3, -1, true);
+
+    static final BooleanSupplier NOT_CANCELLED = () -> false;
 
     public static int getWidth(byte[] buffer) {
         return (buffer[12] & 0xFF) | (buffer[13] & 0xFF) << 8;
@@ -39,416 +56,560 @@ public final class TGAReader {
     }
 
     public static int[] read(byte[] buffer, Order order) throws IOException {
-        // header
-        // int idFieldLength = buffer[0] & 0xFF;
-        // int colormapType = buffer[1] & 0xFF;
+        return read(buffer, order, NOT_CANCELLED);
+    }
+
+    // cancelled is polled once per row, the decode stops with a CancellationException
+    static int[] read(byte[] buffer, Order order, BooleanSupplier cancelled) throws IOException {
+        validate(buffer);
+
+        int[] pixels = new int[getWidth(buffer) * getHeight(buffer)];
+        read(buffer, order, pixels, 0, cancelled);
+        return pixels;
+    }
+
+    // decodes a validated buffer into pixels[pixelOffset], pixels[pixelOffset + 1], ...
+    static void read(byte[] buffer, Order order, int[] pixels, int pixelOffset, BooleanSupplier cancelled) {
+        int type = buffer[2] & 0xFF;
+        int width = getWidth(buffer);
+        int depth = buffer[16] & 0xFF;
+
+        int[] colormap = createColormap(buffer, order);
+        decodeRows(buffer, cancelled, (bytes, offset, index, step) -> {
+            decodeRow(type, width, depth, bytes, offset, colormap, order, pixels, pixelOffset + index, step);
+        });
+    }
+
+    /**
+     * Decodes into interleaved bytes, layout.pixelSize bytes per pixel in upper-left origin.
+     */
+    public static byte[] readBytes(byte[] buffer, ByteLayout layout) throws IOException {
+        validate(buffer);
+
         int type = buffer[2] & 0xFF;
-        int colormapOrigin = (buffer[3] & 0xFF) | (buffer[4] & 0xFF) << 8;
-        int colormapLength = (buffer[5] & 0xFF) | (buffer[6] & 0xFF) << 8;
-        int colormapDepth = buffer[7] & 0xFF;
-        // int originX = (buffer[8] & 0xFF) | (buffer[9] & 0xFF) << 8; // unsupported
-        // int originY = (buffer[10] & 0xFF) | (buffer[11] & 0xFF) << 8; // unsupported
         int width = getWidth(buffer);
         int height = getHeight(buffer);
         int depth = buffer[16] & 0xFF;
-        int descriptor = buffer[17] & 0xFF;
 
-        int[] pixels = null;
+        long length = (long) layout.pixelSize * width * height;
+        if(length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Image too large: "+width+"x"+height);
+        }
+
+        int[] colormap = createColormap(buffer, layout.premultiplied ? ARGB_PRE : ARGB);
+        byte[] bytes = new byte[(int) length];
+        decodeRows(buffer, NOT_CANCELLED, (data, offset, index, step) -> {
+            decodeRow(type, width, depth, data, offset, colormap, layout, bytes, index, step);
+        });
+        return bytes;
+    }
+
+    /**
+     * Decodes colormapped and grayscale images without expanding them to packed ints:
+     * one byte per pixel (two for 16 bit grayscale) plus a 256 entry color table.
+     * Returns null for RGB images.
+     */
+    public static TGACompactImage readCompact(byte[] buffer, Order order) throws IOException {
+        validate(buffer);
+
+        int type = buffer[2] & 0xFF;
+        int width = getWidth(buffer);
+        int height = getHeight(buffer);
+        int depth = buffer[16] & 0xFF;
+
+        int[] palette;
+        if(type == COLORMAP || type == COLORMAP_RLE) {
+            palette = createColormap(buffer, order);
+        } else if(type == GRAYSCALE || type == GRAYSCALE_RLE) {
+            palette = (depth == 8) ? createGrayscaleColormap(order) : null;
+        } else {
+            return null;
+        }
+
+        int elementCount = depth / 8;
+        byte[] data = new byte[elementCount * width * height];
+        decodeRows(buffer, NOT_CANCELLED, (bytes, offset, index, step) -> {
+            copyRow(width, elementCount, bytes, offset, data, index, step);
+        });
+        return new TGACompactImage(width, height, data, elementCount, palette, order);
+    }
+
+    public static TGAPixelView view(byte[] buffer) throws IOException {
+        return view(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * Returns the stored pixels without conversion when they are uncompressed 24/32 bit BGR(A)
+     * or 8/16 bit grayscale, otherwise null. The file starts at buffer.position(), which may be
+     * a mapped file. The view shares the buffer's memory.
+     */
+    public static TGAPixelView view(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int length = buffer.remaining();
+        if(length < 18) {
+            throw new IOException("Truncated header: "+length+" bytes");
+        }
+        byte[] header = new byte[18];
+        for(int i = 0; i < header.length; i++) {
+            header[i] = buffer.get(start + i);
+        }
+        validateHeader(header);
+
+        int type = header[2] & 0xFF;
+        int width = getWidth(header);
+        int height = getHeight(header);
+        int depth = header[16] & 0xFF;
+        int descriptor = header[17] & 0xFF;
+
+        ByteLayout layout;
+        if(type == RGB) {
+            layout = (depth == 32) ? BYTES_BGRA : BYTES_BGR;
+        } else if(type == GRAYSCALE) {
+            layout = (depth == 16) ? BYTES_LUMINANCE_ALPHA : BYTES_LUMINANCE;
+        } else {
+            return null;
+        }
+
+        int offset = getImageDataOffset(header);
+        int rowStride = (depth / 8) * width;
+        int dataLength = rowStride * height;
+        if(offset > length || dataLength > length - offset) {
+            throw new IOException("Truncated image data: "+Math.max(0, length - offset)+" of "+dataLength+" bytes");
+        }
+
+        ByteBuffer pixels = buffer.asReadOnlyBuffer();
+        pixels.limit(start + offset + dataLength);
+        pixels.position(start + offset);
+        return new TGAPixelView(pixels.slice(), width, height, rowStride, layout, (descriptor & UPPER_ORIGIN) != 0, (descriptor & RIGHT_ORIGIN) != 0);
+    }
+
+    /**
+     * Checks the header, the colormap and image data sizes and every RLE packet of the buffer.
+     * Once this passes, the decode kernels in read() can neither overrun the buffer nor their output.
+     */
+    public static void validate(byte[] buffer) throws IOException {
+        if(buffer.length < 18) {
+            throw new IOException("Truncated header: "+buffer.length+" bytes");
+        }
+        validateHeader(buffer);
+
+        int type = buffer[2] & 0xFF;
+        int colormapLength = (buffer[5] & 0xFF) | (buffer[6] & 0xFF) << 8;
+        int depth = buffer[16] & 0xFF;
+
+        int offset = getImageDataOffset(buffer);
+        if(offset > buffer.length) {
+            throw new IOException("Truncated colormap: "+colormapLength+" entries");
+        }
+
+        int dataLength = (depth / 8) * getWidth(buffer) * getHeight(buffer);
+        if(isRLE(type)) {
+            validateRLE(buffer, offset, depth / 8, dataLength);
+        } else if(dataLength > buffer.length - offset) {
+            throw new IOException("Truncated image data: "+(buffer.length - offset)+" of "+dataLength+" bytes");
+        }
+    }
+
+    // checks the 18 byte header alone for decoding into a single array
+    static void validateHeader(byte[] header) throws IOException {
+        validateFormat(header);
+
+        int width = getWidth(header);
+        int height = getHeight(header);
+        int depth = header[16] & 0xFF;
+        long dataLength = (long) (depth / 8) * width * height;
+        if(dataLength > Integer.MAX_VALUE - 8) {
+            throw new IOException("Image too large: "+width+"x"+height);
+        }
+    }
+
+    // checks type and depths, any size is fine for row by row decoding (TGAStreamReader)
+    static void validateFormat(byte[] header) throws IOException {
+        int colormapType = header[1] & 0xFF;
+        int type = header[2] & 0xFF;
+        int colormapDepth = header[7] & 0xFF;
+        int depth = header[16] & 0xFF;
 
-        // data
         switch(type) {
-            case COLORMAP: {
-                int imageDataOffset = 18 + (colormapDepth / 8) * colormapLength;
-                pixels = createPixelsFromColormap(width, height, colormapDepth, buffer, imageDataOffset, buffer, colormapOrigin, descriptor, order);
-                break;
-            }
-            case RGB: {
-                pixels = createPixelsFromRGB(width, height, depth, buffer, 18, descriptor, order);
-                break;
-            }
-            case GRAYSCALE: {
-                pixels = createPixelsFromGrayscale(width, height, depth, buffer, 18, descriptor, order);
+            case COLORMAP:
+            case COLORMAP_RLE:
+                if(colormapType != 1) {
+                    throw new IOException("Missing colormap: colormapType="+colormapType);
+                }
+                if(colormapDepth != 24 && colormapDepth != 32) {
+                    throw new IOException("Unsupported depth:"+colormapDepth);
+                }
+                if(depth != 8) {
+                    throw new IOException("Unsupported depth:"+depth);
+                }
                 break;
-            }
-            case COLORMAP_RLE: {
-                int imageDataOffset = 18 + (colormapDepth / 8) * colormapLength;
-                byte[] decodeBuffer = decodeRLE(width, height, depth, buffer, imageDataOffset);
-                pixels = createPixelsFromColormap(width, height, colormapDepth, decodeBuffer, 0, buffer, colormapOrigin, descriptor, order);
+            case RGB:
+            case RGB_RLE:
+                if(depth != 24 && depth != 32) {
+                    throw new IOException("Unsupported depth:"+depth);
+                }
                 break;
-            }
-            case RGB_RLE: {
-                byte[] decodeBuffer = decodeRLE(width, height, depth, buffer, 18);
-                pixels = createPixelsFromRGB(width, height, depth, decodeBuffer, 0, descriptor, order);
+            case GRAYSCALE:
+            case GRAYSCALE_RLE:
+                if(depth != 8 && depth != 16) {
+                    throw new IOException("Unsupported depth:"+depth);
+                }
                 break;
+            default:
+                throw new IOException("Unsupported image type: "+type);
+        }
+    }
+
+    static boolean isRLE(int type) {
+        return type == COLORMAP_RLE || type == RGB_RLE || type == GRAYSCALE_RLE;
+    }
+
+    private static void validateRLE(byte[] buffer, int offset, int elementCount, int decodeBufferLength) throws IOException {
+        int decoded = 0;
+        while(decoded < decodeBufferLength) {
+            if(offset >= buffer.length) {
+                throw new IOException("Truncated RLE data: "+decoded+" of "+decodeBufferLength+" bytes decoded");
             }
-            case GRAYSCALE_RLE: {
-                byte[] decodeBuffer = decodeRLE(width, height, depth, buffer, 18);
-                pixels = createPixelsFromGrayscale(width, height, depth, decodeBuffer, 0, descriptor, order);
-                break;
+            int packet = buffer[offset++] & 0xFF;
+            int count = ((packet & 0x7F) + 1) * elementCount;
+            int size = (packet & 0x80) != 0 ? elementCount : count;
+            if(count > decodeBufferLength - decoded) {
+                throw new IOException("RLE packet overruns image data at offset "+(offset - 1));
             }
-            default: {
-                throw new IOException("Unsupported image type: "+type);
+            if(size > buffer.length - offset) {
+                throw new IOException("Truncated RLE packet at offset "+(offset - 1));
             }
+            offset += size;
+            decoded += count;
         }
-        return pixels;
     }
 
-    private static byte[] decodeRLE(int width, int height, int depth, byte[] buffer, int offset) {
+    private static int getImageDataOffset(byte[] buffer) {
+        int idFieldLength = buffer[0] & 0xFF;
+        int colormapType = buffer[1] & 0xFF;
+        int colormapLength = (buffer[5] & 0xFF) | (buffer[6] & 0xFF) << 8;
+        int colormapDepth = buffer[7] & 0xFF;
+        int offset = 18 + idFieldLength;
+        if(colormapType == 1) {
+            offset += ((colormapDepth + 7) / 8) * colormapLength;
+        }
+        return offset;
+    }
+
+    // The kernels below assume a buffer that passed validate().
+
+    interface RowDecoder {
+        // converts the stored row at bytes[offset] into output pixel index, index + step, ...
+        void decodeRow(byte[] bytes, int offset, int index, int step);
+    }
+
+    private static void decodeRows(byte[] buffer, BooleanSupplier cancelled, RowDecoder decoder) {
+        int type = buffer[2] & 0xFF;
+        int width = getWidth(buffer);
+        int height = getHeight(buffer);
+        int depth = buffer[16] & 0xFF;
+        int descriptor = buffer[17] & 0xFF;
+
+        byte[] bytes = buffer;
+        int offset = getImageDataOffset(buffer);
+        if(isRLE(type)) {
+            bytes = decodeRLE(width, height, depth, buffer, offset, cancelled);
+            offset = 0;
+        }
+
+        int rowLength = (depth / 8) * width;
+        int step = getColumnStep(descriptor);
+        for(int i = 0; i < height; i++) {
+            checkCancelled(cancelled);
+            decoder.decodeRow(bytes, offset, getRowStart(width, height, i, descriptor), step);
+            offset += rowLength;
+        }
+    }
+
+    private static byte[] decodeRLE(int width, int height, int depth, byte[] buffer, int offset, BooleanSupplier cancelled) {
         int elementCount = depth / 8;
-        byte[] elements = new byte[elementCount];
         int decodeBufferLength = elementCount * width * height;
         byte[] decodeBuffer = new byte[decodeBufferLength];
         int decoded = 0;
+        int nextRow = 0;
 
         while(decoded < decodeBufferLength) {
+            if(decoded >= nextRow) {
+                checkCancelled(cancelled);
+                nextRow += elementCount * width;
+            }
             int packet = buffer[offset++] & 0xFF;
+            int count = ((packet & 0x7F) + 1) * elementCount;
             if((packet & 0x80) != 0) { // RLE
-                for(int i = 0; i < elementCount; i++) {
-                    elements[i] = buffer[offset++];
-                }
-                int count = (packet & 0x7F) + 1;
-                for(int i = 0; i < count; i++) {
-                    for(int j = 0; j < elementCount; j++) {
-                        decodeBuffer[decoded++] = elements[j];
+                if(elementCount == 1) {
+                    Arrays.fill(decodeBuffer, decoded, decoded + count, buffer[offset]);
+                } else {
+                    System.arraycopy(buffer, offset, decodeBuffer, decoded, elementCount);
+                    for(int copied = elementCount; copied < count; copied <<= 1) {
+                        System.arraycopy(decodeBuffer, decoded, decodeBuffer, decoded + copied, Math.min(copied, count - copied));
                     }
                 }
+                offset += elementCount;
             } else { // RAW
-                int count = (packet + 1) * elementCount;
-                for(int i = 0; i < count; i++) {
-                    decodeBuffer[decoded++] = buffer[offset++];
-                }
+                System.arraycopy(buffer, offset, decodeBuffer, decoded, count);
+                offset += count;
             }
+            decoded += count;
         }
         return decodeBuffer;
     }
 
-    private static int[] createPixelsFromColormap(int width, int height, int depth, byte[] bytes, int offset, byte[] palette, int colormapOrigin, int descriptor, Order order) throws IOException {
-        int[] pixels = null;
+    private static int[] createColormap(byte[] buffer, Order order) {
+        int type = buffer[2] & 0xFF;
+        if(type != COLORMAP && type != COLORMAP_RLE) {
+            return null;
+        }
+        int colormapOrigin = (buffer[3] & 0xFF) | (buffer[4] & 0xFF) << 8;
+        int colormapLength = (buffer[5] & 0xFF) | (buffer[6] & 0xFF) << 8;
+        int colormapDepth = buffer[7] & 0xFF;
+        return createColormap(colormapDepth, buffer, 18 + (buffer[0] & 0xFF), colormapOrigin, colormapLength, order);
+    }
+
+    static int[] createColormap(int depth, byte[] palette, int offset, int colormapOrigin, int colormapLength, Order order) {
         int rs = order.redShift;
         int gs = order.greenShift;
         int bs = order.blueShift;
         int as = order.alphaShift;
+        int elementCount = depth / 8;
 
-        switch(depth) {
-            case 24:
-                pixels = new int[width * height];
-                if((descriptor & RIGHT_ORIGIN) != 0) {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromColormap(width, bytes, offset, 3, palette, colormapOrigin, i, j, rs, gs, bs, as);
-                                pixels[width * i + (width - j - 1)] = color;
-                            }
-                        }
-                    } else {
-                        // LowerRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromColormap(width, bytes, offset, 3, palette, colormapOrigin, i, j, rs, gs, bs, as);
-                                pixels[width * (height - i - 1) + (width - j - 1)] = color;
-                            }
-                        }
-                    }
-                } else {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromColormap(width, bytes, offset, 3, palette, colormapOrigin, i, j, rs, gs, bs, as);
-                                pixels[width * i + j] = color;
-                            }
-                        }
-                    } else {
-                        // LowerLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromColormap(width, bytes, offset, 3, palette, colormapOrigin, i, j, rs, gs, bs, as);
-                                pixels[width * (height - i - 1) + j] = color;
-                            }
-                        }
-                    }
-                }
+        // indices outside of the colormap stay white
+        int[] colormap = new int[256];
+        Arrays.fill(colormap, 0xFFFFFFFF);
+        for(int i = 0; i < colormapLength && colormapOrigin + i < colormap.length; i++) {
+            int index = offset + elementCount * i;
+            int b = palette[index + 0] & 0xFF;
+            int g = palette[index + 1] & 0xFF;
+            int r = palette[index + 2] & 0xFF;
+            int a = (elementCount == 3) ? 0xFF : palette[index + 3] & 0xFF;
+            if(order.premultiplied) {
+                r = premultiply(r, a);
+                g = premultiply(g, a);
+                b = premultiply(b, a);
+            }
+            colormap[colormapOrigin + i] = (r << rs) | (g << gs) | (b << bs) | (a << as);
+        }
+        return colormap;
+    }
+
+    private static int[] createGrayscaleColormap(Order order) {
+        int[] colormap = new int[256];
+        for(int e = 0; e < colormap.length; e++) {
+            colormap[e] = (e << order.redShift) | (e << order.greenShift) | (e << order.blueShift) | (0xFF << order.alphaShift);
+        }
+        return colormap;
+    }
+
+    static void decodeRow(int type, int width, int depth, byte[] bytes, int offset, int[] colormap, Order order, int[] pixels, int index, int step) {
+        switch(type) {
+            case COLORMAP:
+            case COLORMAP_RLE:
+                decodeColormapRow(width, bytes, offset, colormap, pixels, index, step);
                 break;
-            case 32:
-                pixels = new int[width * height];
-                if((descriptor & RIGHT_ORIGIN) != 0) {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromColormap(width, bytes, offset, 4, palette, colormapOrigin, i, j, rs, gs, bs, as);
-                                pixels[width * i + (width - j - 1)] = color;
-                            }
-                        }
-                    } else {
-                        // LowerRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromColormap(width, bytes, offset, 4, palette, colormapOrigin, i, j, rs, gs, bs, as);
-                                pixels[width * (height - i - 1) + (width - j - 1)] = color;
-                            }
-                        }
-                    }
-                } else {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromColormap(width, bytes, offset, 4, palette, colormapOrigin, i, j, rs, gs, bs, as);
-                                pixels[width * i + j] = color;
-                            }
-                        }
-                    } else {
-                        // LowerLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromColormap(width, bytes, offset, 4, palette, colormapOrigin, i, j, rs, gs, bs, as);
-                                pixels[width * (height - i - 1) + j] = color;
-                            }
-                        }
-                    }
-                }
+            case RGB:
+            case RGB_RLE:
+                decodeRGBRow(width, depth, bytes, offset, order, pixels, index, step);
                 break;
             default:
-                throw new IOException("Unsupported depth:"+depth);
+                decodeGrayscaleRow(width, depth, bytes, offset, order, pixels, index, step);
+                break;
+        }
+    }
+
+    static void decodeRow(int type, int width, int depth, byte[] bytes, int offset, int[] colormap, ByteLayout layout, byte[] out, int index, int step) {
+        switch(type) {
+            case COLORMAP:
+            case COLORMAP_RLE:
+                decodeColormapRow(width, bytes, offset, colormap, layout, out, index, step);
+                break;
+            case RGB:
+            case RGB_RLE:
+                decodeRGBRow(width, depth, bytes, offset, layout, out, index, step);
+                break;
+            default:
+                decodeGrayscaleRow(width, depth, bytes, offset, layout, out, index, step);
+                break;
         }
-        return pixels;
     }
 
-    private static int[] createPixelsFromRGB(int width, int height, int depth, byte[] bytes, int offset, int descriptor, Order order) throws IOException {
-        int[] pixels = null;
+    // Row kernels: convert one stored row starting at offset into pixels[index], pixels[index + step], ...
+
+    static void decodeColormapRow(int width, byte[] bytes, int offset, int[] colormap, int[] pixels, int index, int step) {
+        for(int j = 0; j < width; j++) {
+            pixels[index] = colormap[bytes[offset++] & 0xFF];
+            index += step;
+        }
+    }
+
+    static void decodeRGBRow(int width, int depth, byte[] bytes, int offset, Order order, int[] pixels, int index, int step) {
         int rs = order.redShift;
         int gs = order.greenShift;
         int bs = order.blueShift;
         int as = order.alphaShift;
 
-        switch(depth) {
-            case 24:
-                pixels = new int[width * height];
-                if((descriptor & RIGHT_ORIGIN) != 0) {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromRGB(width, bytes, offset, 3, i, j, rs, gs, bs, as);
-                                pixels[width * i + (width - j - 1)] = color;
-                            }
-                        }
-                    } else {
-                        // LowerRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromRGB(width, bytes, offset, 3, i, j, rs, gs, bs, as);
-                                pixels[width * (height - i - 1) + (width - j - 1)] = color;
-                            }
-                        }
-                    }
-                } else {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromRGB(width, bytes, offset, 3, i, j, rs, gs, bs, as);
-                                pixels[width * i + j] = color;
-                            }
-                        }
-                    } else {
-                        // LowerLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromRGB(width, bytes, offset, 3, i, j, rs, gs, bs, as);
-                                pixels[width * (height - i - 1) + j] = color;
-                            }
-                        }
-                    }
-                }
-                break;
-            case 32:
-                pixels = new int[width * height];
-                if((descriptor & RIGHT_ORIGIN) != 0) {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromRGB(width, bytes, offset, 4, i, j, rs, gs, bs, as);
-                                pixels[width * i + (width - j - 1)] = color;
-                            }
-                        }
-                    } else {
-                        // LowerRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromRGB(width, bytes, offset, 4, i, j, rs, gs, bs, as);
-                                pixels[width * (height - i - 1) + (width - j - 1)] = color;
-                            }
-                        }
-                    }
-                } else {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromRGB(width, bytes, offset, 4, i, j, rs, gs, bs, as);
-                                pixels[width * i + j] = color;
-                            }
-                        }
-                    } else {
-                        // LowerLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromRGB(width, bytes, offset, 4, i, j, rs, gs, bs, as);
-                                pixels[width * (height - i - 1) + j] = color;
-                            }
-                        }
-                    }
+        if(depth == 24) {
+            for(int j = 0; j < width; j++) {
+                int b = bytes[offset + 0] & 0xFF;
+                int g = bytes[offset + 1] & 0xFF;
+                int r = bytes[offset + 2] & 0xFF;
+                pixels[index] = (r << rs) | (g << gs) | (b << bs) | (0xFF << as);
+                offset += 3;
+                index += step;
+            }
+        } else {
+            boolean premultiplied = order.premultiplied;
+            for(int j = 0; j < width; j++) {
+                int b = bytes[offset + 0] & 0xFF;
+                int g = bytes[offset + 1] & 0xFF;
+                int r = bytes[offset + 2] & 0xFF;
+                int a = bytes[offset + 3] & 0xFF;
+                if(premultiplied) {
+                    r = premultiply(r, a);
+                    g = premultiply(g, a);
+                    b = premultiply(b, a);
                 }
-                break;
-            default:
-                throw new IOException("Unsupported depth:"+depth);
+                pixels[index] = (r << rs) | (g << gs) | (b << bs) | (a << as);
+                offset += 4;
+                index += step;
+            }
         }
-        return pixels;
     }
 
-    private static int[] createPixelsFromGrayscale(int width, int height, int depth, byte[] bytes, int offset, int descriptor, Order order) throws IOException {
-        int[] pixels = null;
+    static void decodeGrayscaleRow(int width, int depth, byte[] bytes, int offset, Order order, int[] pixels, int index, int step) {
         int rs = order.redShift;
         int gs = order.greenShift;
         int bs = order.blueShift;
         int as = order.alphaShift;
 
-        switch(depth) {
-            case 8:
-                pixels = new int[width * height];
-                if((descriptor & RIGHT_ORIGIN) != 0) {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromGrayscale(width, bytes, offset, 0, i, j, rs, bs, gs, as);
-                                pixels[width * i + (width - j - 1)] = color;
-                            }
-                        }
-                    } else {
-                        // LowerRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromGrayscale(width, bytes, offset, 0, i, j, rs, bs, gs, as);
-                                pixels[width * (height - i - 1) + (width - j - 1)] = color;
-                            }
-                        }
-                    }
-                } else {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromGrayscale(width, bytes, offset, 0, i, j, rs, bs, gs, as);
-                                pixels[width * i + j] = color;
-                            }
-                        }
-                    } else {
-                        // LowerLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromGrayscale(width, bytes, offset, 0, i, j, rs, bs, gs, as);
-                                pixels[width * (height - i - 1) + j] = color;
-                            }
-                        }
-                    }
-                }
-                break;
-            case 16:
-                pixels = new int[width * height];
-                if((descriptor & RIGHT_ORIGIN) != 0) {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromGrayscale(width, bytes, offset, 1, i, j, rs, bs, gs, as);
-                                pixels[width * i + (width - j - 1)] = color;
-                            }
-                        }
-                    } else {
-                        // LowerRight
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromGrayscale(width, bytes, offset, 1, i, j, rs, bs, gs, as);
-                                pixels[width * (height - i - 1) + (width - j - 1)] = color;
-                            }
-                        }
-                    }
-                } else {
-                    if((descriptor & UPPER_ORIGIN) != 0) {
-                        // UpperLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromGrayscale(width, bytes, offset, 1, i, j, rs, bs, gs, as);
-                                pixels[width * i + j] = color;
-                            }
-                        }
-                    } else {
-                        // LowerLeft
-                        for(int i = 0; i < height; i++) {
-                            for(int j = 0; j < width; j++) {
-                                int color = getColorFromGrayscale(width, bytes, offset, 1, i, j, rs, bs, gs, as);
-                                pixels[width * (height - i - 1) + j] = color;
-                            }
-                        }
-                    }
+        if(depth == 8) {
+            for(int j = 0; j < width; j++) {
+                int e = bytes[offset++] & 0xFF;
+                pixels[index] = (e << rs) | (e << gs) | (e << bs) | (0xFF << as);
+                index += step;
+            }
+        } else {
+            boolean premultiplied = order.premultiplied;
+            for(int j = 0; j < width; j++) {
+                int e = bytes[offset + 0] & 0xFF;
+                int a = bytes[offset + 1] & 0xFF;
+                if(premultiplied) {
+                    e = premultiply(e, a);
                 }
-                break;
-            default:
-                throw new IOException("Unsupported depth:"+depth);
+                pixels[index] = (e << rs) | (e << gs) | (e << bs) | (a << as);
+                offset += 2;
+                index += step;
+            }
         }
-        return pixels;
     }
 
-    private static int getColorFromColormap(int width, byte[] bytes, int offset, int indexValue, byte[] palette, int colormapOrigin, int loopI, int loopJ, int rs, int gs, int bs, int as) {
-        int colormapIndex = bytes[offset + width * loopI + loopJ] & 0xFF - colormapOrigin;
-        int color = 0xFFFFFFFF;
-        if(colormapIndex >= 0) {
-            int index = indexValue * colormapIndex + 18;
-            int b = palette[index + 0] & 0xFF;
-            int g = palette[index + 1] & 0xFF;
-            int r = palette[index + 2] & 0xFF;
-            int a;
-            if(indexValue == 3) {
-                a = 0xFF;
-            } else {
-                a = palette[index + 3] & 0xFF;
+    // copies stored elements unchanged, only reordered for the image origin
+    static void copyRow(int width, int elementCount, byte[] bytes, int offset, byte[] out, int index, int step) {
+        if(step == 1) {
+            System.arraycopy(bytes, offset, out, index * elementCount, width * elementCount);
+            return;
+        }
+        index *= elementCount;
+        step *= elementCount;
+        for(int j = 0; j < width; j++) {
+            for(int k = 0; k < elementCount; k++) {
+                out[index + k] = bytes[offset++];
             }
-            color = (r << rs) | (g << gs) | (b << bs) | (a << as);
+            index += step;
         }
-        return color;
     }
 
-    private static int getColorFromRGB(int width, byte[] bytes, int offset, int indexValue, int loopI, int loopJ, int rs, int gs, int bs, int as) {
-        int index = offset + indexValue * width * loopI + indexValue * loopJ;
-        int b = bytes[index + 0] & 0xFF;
-        int g = bytes[index + 1] & 0xFF;
-        int r = bytes[index + 2] & 0xFF;
-        int a;
-        if(indexValue == 3) {
-            a = 0xFF;
-        } else {
-            a = bytes[index + 3] & 0xFF;
+    // colormap is packed as ARGB, already premultiplied if the layout asks for it
+    static void decodeColormapRow(int width, byte[] bytes, int offset, int[] colormap, ByteLayout layout, byte[] out, int index, int step) {
+        int size = layout.pixelSize;
+        index *= size;
+        step *= size;
+        for(int j = 0; j < width; j++) {
+            int color = colormap[bytes[offset++] & 0xFF];
+            putPixel(out, index, layout, false, (color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF, color >>> 24);
+            index += step;
         }
-        int color = (r << rs) | (g << gs) | (b << bs) | (a << as);
-        return color;
     }
 
-    private static int getColorFromGrayscale(int width, byte[] bytes, int offset, int indexValue, int loopI, int loopJ, int rs, int gs, int bs, int as) {
-        int e;
-        int a;
-        if(indexValue == 0) {
-            e = bytes[offset + width * loopI + loopJ] & 0xFF;
-            a = 0xFF;
-        } else {
-            e = bytes[offset + 2 * width * loopI + 2 * loopJ + 0] & 0xFF;
-            a = bytes[offset + 2 * width * loopI + 2 * loopJ + 1] & 0xFF;
+    static void decodeRGBRow(int width, int depth, byte[] bytes, int offset, ByteLayout layout, byte[] out, int index, int step) {
+        int size = layout.pixelSize;
+        int elementCount = depth / 8;
+        boolean premultiplied = layout.premultiplied && elementCount == 4;
+        index *= size;
+        step *= size;
+        for(int j = 0; j < width; j++) {
+            int b = bytes[offset + 0] & 0xFF;
+            int g = bytes[offset + 1] & 0xFF;
+            int r = bytes[offset + 2] & 0xFF;
+            int a = (elementCount == 3) ? 0xFF : bytes[offset + 3] & 0xFF;
+            putPixel(out, index, layout, premultiplied, r, g, b, a);
+            offset += elementCount;
+            index += step;
+        }
+    }
+
+    static void decodeGrayscaleRow(int width, int depth, byte[] bytes, int offset, ByteLayout layout, byte[] out, int index, int step) {
+        int size = layout.pixelSize;
+        int elementCount = depth / 8;
+        boolean premultiplied = layout.premultiplied && elementCount == 2;
+        index *= size;
+        step *= size;
+        for(int j = 0; j < width; j++) {
+            int e = bytes[offset] & 0xFF;
+            int a = (elementCount == 1) ? 0xFF : bytes[offset + 1] & 0xFF;
+            putPixel(out, index, layout, premultiplied, e, e, e, a);
+            offset += elementCount;
+            index += step;
+        }
+    }
+
+    private static void putPixel(byte[] out, int index, ByteLayout layout, boolean premultiply, int r, int g, int b, int a) {
+        if(premultiply) {
+            r = premultiply(r, a);
+            g = premultiply(g, a);
+            b = premultiply(b, a);
+        }
+        if(layout.redOffset >= 0) {
+            out[index + layout.redOffset] = (byte) r;
+        }
+        if(layout.greenOffset >= 0) {
+            out[index + layout.greenOffset] = (byte) g;
         }
-        int color = (e << rs) | (e << gs) | (e << bs) | (a << as);
-        return color;
+        if(layout.blueOffset >= 0) {
+            out[index + layout.blueOffset] = (byte) b;
+        }
+        if(layout.alphaOffset >= 0) {
+            out[index + layout.alphaOffset] = (byte) a;
+        }
+        if(layout.luminanceOffset >= 0) {
+            // BT.601 weights in 8 bit fixed point, exact for gray input
+            out[index + layout.luminanceOffset] = (byte) ((77 * r + 150 * g + 29 * b + 128) >> 8);
+        }
+    }
+
+    // round(c * a / 255) without a division
+    static int premultiply(int c, int a) {
+        int t = c * a + 0x80;
+        return (t + (t >> 8)) >> 8;
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if(cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    // index of the first decoded pixel of stored row i in the upper-left origin output
+    static int getRowStart(int width, int height, int i, int descriptor) {
+        int y = ((descriptor & UPPER_ORIGIN) != 0) ? i : height - i - 1;
+        int x = ((descriptor & RIGHT_ORIGIN) != 0) ? width - 1 : 0;
+        return width * y + x;
+    }
+
+    static int getColumnStep(int descriptor) {
+        return ((descriptor & RIGHT_ORIGIN) != 0) ? -1 : 1;
     }
 }
@@ -0,0 +1,274 @@
+/**
+ * TGASequenceLoader.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plays back a numbered TGA sequence with read-ahead.
+ * Files are read one after another on a dedicated I/O thread, decoded in parallel on the decode
+ * executor and handed out strictly in order. Up to readAhead frames are in flight at any time.
+ * Released frames return their pixel arrays to a pool that later decodes reuse.
+ */
+public final class TGASequenceLoader implements AutoCloseable {
+
+    public static final class Frame {
+        public final int index;
+        public final int width;
+        public final int height;
+        public final int[] pixels; // upper-left origin, valid until release()
+        private final TGASequenceLoader loader;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Frame(int index, int width, int height, int[] pixels, TGASequenceLoader loader) {
+            this.index = index;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            this.loader = loader;
+        }
+
+        // hands the pixel array back for reuse, the frame must not be used afterwards; later calls do nothing
+        public void release() {
+            if(released.compareAndSet(false, true)) {
+                loader.recycle(pixels);
+            }
+        }
+    }
+
+    private static final class Slot {
+        final int index;
+        volatile boolean cancelled;
+        CompletableFuture<Frame> future;
+
+        Slot(int index) {
+            this.index = index;
+        }
+    }
+
+    private final List<Path> paths;
+    private final Order order;
+    private final int readAhead;
+    private final Executor decodeExecutor;
+    private final ExecutorService io;
+    private final ArrayDeque<Slot> pending = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<int[]> pool = new ConcurrentLinkedQueue<>();
+    private int nextSubmit;
+    private volatile boolean closed;
+
+    public TGASequenceLoader(List<Path> paths, Order order, int readAhead) {
+        this(paths, order, readAhead, ForkJoinPool.commonPool());
+    }
+
+    public TGASequenceLoader(List<Path> paths, Order order, int readAhead, Executor decodeExecutor) {
+        if(readAhead < 1) {
+            throw new IllegalArgumentException("readAhead must be positive: "+readAhead);
+        }
+        this.paths = new ArrayList<>(paths);
+        this.order = order;
+        this.readAhead = readAhead;
+        this.decodeExecutor = decodeExecutor;
+        this.io = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TGASequenceLoader-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        schedule();
+    }
+
+    public int getFrameCount() {
+        return paths.size();
+    }
+
+    // index of the frame take() returns next
+    public synchronized int getPosition() {
+        return pending.isEmpty() ? nextSubmit : pending.peek().index;
+    }
+
+    /**
+     * Waits for the next frame in order, null after the last frame.
+     */
+    public Frame take() throws IOException {
+        Slot slot;
+        synchronized(this) {
+            slot = pending.poll();
+            schedule();
+        }
+        if(slot == null) {
+            return null;
+        }
+        return join(slot);
+    }
+
+    /**
+     * Returns the next frame if it is decoded already, otherwise null without waiting.
+     */
+    public Frame poll() throws IOException {
+        Slot slot;
+        synchronized(this) {
+            slot = pending.peek();
+            if(slot == null || !slot.future.isDone()) {
+                return null;
+            }
+            pending.poll();
+            schedule();
+        }
+        return join(slot);
+    }
+
+    /**
+     * Returns the newest frame of the decoded run at the head of the queue, dropping the older
+     * ones of that run. Use it when the consumer fell behind. Null if the next frame isn't ready.
+     */
+    public Frame pollLatest() throws IOException {
+        Slot slot;
+        synchronized(this) {
+            slot = pending.peek();
+            if(slot == null || !slot.future.isDone()) {
+                return null;
+            }
+            pending.poll();
+            while(!pending.isEmpty() && pending.peek().future.isDone()) {
+                drop(slot);
+                slot = pending.poll();
+            }
+            schedule();
+        }
+        return join(slot);
+    }
+
+    /**
+     * Continues playback at index, forwards or backwards. Frames in flight before it are
+     * cancelled between rows, frames already read ahead at or after it are kept.
+     */
+    public synchronized void skipTo(int index) {
+        index = Math.max(0, Math.min(index, paths.size()));
+        if(!pending.isEmpty() && pending.peek().index > index) {
+            // seeking backwards, nothing in flight is useful
+            while(!pending.isEmpty()) {
+                drop(pending.poll());
+            }
+        }
+        while(!pending.isEmpty() && pending.peek().index < index) {
+            drop(pending.poll());
+        }
+        if(pending.isEmpty()) {
+            nextSubmit = index;
+        }
+        schedule();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        while(!pending.isEmpty()) {
+            drop(pending.poll());
+        }
+        io.shutdownNow();
+        pool.clear();
+    }
+
+    // keeps readAhead frames in flight, callers hold the lock
+    private void schedule() {
+        while(!closed && pending.size() < readAhead && nextSubmit < paths.size()) {
+            Slot slot = new Slot(nextSubmit++);
+            Path path = paths.get(slot.index);
+            slot.future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return Files.readAllBytes(path);
+                } catch(IOException e) {
+                    throw new UncheckedIOException(path.toString(), e);
+                }
+            }, io).thenApplyAsync(buffer -> decode(slot, buffer), decodeExecutor);
+            pending.add(slot);
+        }
+    }
+
+    private Frame decode(Slot slot, byte[] buffer) {
+        if(slot.cancelled) {
+            throw new CancellationException();
+        }
+        try {
+            TGAReader.validate(buffer);
+        } catch(IOException e) {
+            throw new UncheckedIOException(paths.get(slot.index).toString(), e);
+        }
+        int width = TGAReader.getWidth(buffer);
+        int height = TGAReader.getHeight(buffer);
+        int[] pixels = acquire(width * height);
+        try {
+            TGAReader.read(buffer, order, pixels, 0, () -> slot.cancelled);
+        } catch(CancellationException e) {
+            recycle(pixels);
+            throw e;
+        }
+        return new Frame(slot.index, width, height, pixels, this);
+    }
+
+    private void drop(Slot slot) {
+        slot.cancelled = true;
+        slot.future.whenComplete((frame, t) -> {
+            if(frame != null) {
+                frame.release();
+            }
+        });
+    }
+
+    private Frame join(Slot slot) throws IOException {
+        try {
+            return slot.future.join();
+        } catch(CompletionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private int[] acquire(int length) {
+        int[] pixels = pool.poll();
+        while(pixels != null && pixels.length != length) {
+            // size changed within the sequence, let the stale array go
+            pixels = pool.poll();
+        }
+        return (pixels != null) ? pixels : new int[length];
+    }
+
+    private void recycle(int[] pixels) {
+        if(!closed && pool.size() < 2 * readAhead) {
+            pool.offer(pixels);
+        }
+    }
+}
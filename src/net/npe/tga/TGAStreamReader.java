@@ -0,0 +1,286 @@
+/**
+ * TGAStreamReader.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Push based decoder for TGA data arriving in chunks.
+ * Chunks may be split anywhere, including inside the header or an RLE packet.
+ * Every scanline is handed to the listener as soon as its last byte has arrived.
+ * Only one row is held in memory, so images of any size (up to 65535x65535) can be decoded
+ * into storage the listener owns, such as direct buffers or mapped files.
+ */
+public final class TGAStreamReader {
+
+    public interface RowListener {
+        /**
+         * y is the row in upper-left origin, row holds width pixels packed by the Order.
+         * The row array is reused for the next row, copy it if it must be kept.
+         */
+        void onRow(int y, int[] row);
+    }
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int STATE_HEADER = 0;
+    private static final int STATE_ID = 1;
+    private static final int STATE_COLORMAP = 2;
+    private static final int STATE_DATA = 3;
+    private static final int STATE_DONE = 4;
+
+    private final Order order;
+    private final RowListener listener;
+
+    private int state = STATE_HEADER;
+    private final byte[] header = new byte[18];
+    private int headerFilled;
+    private int idRemaining;
+    private byte[] colormapBytes;
+    private int colormapFilled;
+    private int[] colormap;
+
+    private int type;
+    private int width;
+    private int height;
+    private int depth;
+    private int descriptor;
+    private int elementCount;
+
+    private byte[] rowBytes;
+    private int rowFilled;
+    private int[] row;
+    private int rows;
+
+    // current RLE packet: output bytes still to produce, and the repeated element of a run packet
+    private int packetRemaining;
+    private boolean packetRun;
+    private byte[] runValue;
+    private int runFilled;
+
+    public TGAStreamReader(Order order, RowListener listener) {
+        this.order = order;
+        this.listener = listener;
+    }
+
+    /**
+     * Decodes a whole channel, e.g. a FileChannel of a file larger than a byte[] can hold.
+     */
+    public static void read(ReadableByteChannel channel, Order order, RowListener listener) throws IOException {
+        TGAStreamReader reader = new TGAStreamReader(order, listener);
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        while(!reader.isDone() && channel.read(chunk) >= 0) {
+            chunk.flip();
+            reader.push(chunk);
+            chunk.clear();
+        }
+        reader.finish();
+    }
+
+    /**
+     * Consumes all remaining bytes of chunk. Bytes after the last row (footer etc.) are ignored.
+     */
+    public void push(ByteBuffer chunk) throws IOException {
+        while(chunk.hasRemaining() && state != STATE_DONE) {
+            switch(state) {
+                case STATE_HEADER: {
+                    int n = Math.min(chunk.remaining(), header.length - headerFilled);
+                    chunk.get(header, headerFilled, n);
+                    headerFilled += n;
+                    if(headerFilled == header.length) {
+                        readHeader();
+                    }
+                    break;
+                }
+                case STATE_ID: {
+                    int n = Math.min(chunk.remaining(), idRemaining);
+                    chunk.position(chunk.position() + n);
+                    idRemaining -= n;
+                    if(idRemaining == 0) {
+                        nextState();
+                    }
+                    break;
+                }
+                case STATE_COLORMAP: {
+                    int n = Math.min(chunk.remaining(), colormapBytes.length - colormapFilled);
+                    chunk.get(colormapBytes, colormapFilled, n);
+                    colormapFilled += n;
+                    if(colormapFilled == colormapBytes.length) {
+                        readColormap();
+                    }
+                    break;
+                }
+                default: {
+                    if(TGAReader.isRLE(type)) {
+                        pushRLE(chunk);
+                    } else {
+                        pushRaw(chunk);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    public void push(byte[] chunk, int offset, int length) throws IOException {
+        push(ByteBuffer.wrap(chunk, offset, length));
+    }
+
+    /**
+     * Call after the last chunk, fails when the image data is incomplete.
+     */
+    public void finish() throws IOException {
+        if(state != STATE_DONE) {
+            throw new IOException("Truncated image data: "+rows+" of "+height+" rows decoded");
+        }
+    }
+
+    public boolean isHeaderComplete() {
+        return state > STATE_HEADER;
+    }
+
+    public boolean isDone() {
+        return state == STATE_DONE;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDecodedRows() {
+        return rows;
+    }
+
+    private void readHeader() throws IOException {
+        TGAReader.validateFormat(header);
+        type = header[2] & 0xFF;
+        width = TGAReader.getWidth(header);
+        height = TGAReader.getHeight(header);
+        depth = header[16] & 0xFF;
+        descriptor = header[17] & 0xFF;
+        elementCount = depth / 8;
+
+        idRemaining = header[0] & 0xFF;
+        if((header[1] & 0xFF) == 1) {
+            int colormapLength = (header[5] & 0xFF) | (header[6] & 0xFF) << 8;
+            int colormapDepth = header[7] & 0xFF;
+            colormapBytes = new byte[((colormapDepth + 7) / 8) * colormapLength];
+        }
+
+        rowBytes = new byte[elementCount * width];
+        row = new int[width];
+        runValue = new byte[elementCount];
+        state = STATE_ID;
+        if(idRemaining == 0) {
+            nextState();
+        }
+    }
+
+    private void readColormap() {
+        if(type == TGAReader.COLORMAP || type == TGAReader.COLORMAP_RLE) {
+            int colormapOrigin = (header[3] & 0xFF) | (header[4] & 0xFF) << 8;
+            int colormapLength = (header[5] & 0xFF) | (header[6] & 0xFF) << 8;
+            int colormapDepth = header[7] & 0xFF;
+            colormap = TGAReader.createColormap(colormapDepth, colormapBytes, 0, colormapOrigin, colormapLength, order);
+        }
+        colormapBytes = null;
+        state = STATE_DATA;
+        if(width == 0 || height == 0) {
+            state = STATE_DONE;
+        }
+    }
+
+    // leaves STATE_ID for the colormap or the image data
+    private void nextState() {
+        if(colormapBytes != null && colormapBytes.length > 0) {
+            state = STATE_COLORMAP;
+        } else {
+            readColormap();
+        }
+    }
+
+    private void pushRaw(ByteBuffer chunk) {
+        int n = Math.min(chunk.remaining(), rowBytes.length - rowFilled);
+        chunk.get(rowBytes, rowFilled, n);
+        rowFilled += n;
+        if(rowFilled == rowBytes.length) {
+            emitRow();
+        }
+    }
+
+    private void pushRLE(ByteBuffer chunk) throws IOException {
+        if(packetRemaining == 0) {
+            int packet = chunk.get() & 0xFF;
+            packetRun = (packet & 0x80) != 0;
+            packetRemaining = ((packet & 0x7F) + 1) * elementCount;
+            runFilled = 0;
+            long outputRemaining = (long) (height - rows) * rowBytes.length - rowFilled;
+            if(packetRemaining > outputRemaining) {
+                throw new IOException("RLE packet overruns image data at row "+rows);
+            }
+            return;
+        }
+
+        if(!packetRun) {
+            int n = Math.min(chunk.remaining(), Math.min(packetRemaining, rowBytes.length - rowFilled));
+            chunk.get(rowBytes, rowFilled, n);
+            rowFilled += n;
+            packetRemaining -= n;
+            if(rowFilled == rowBytes.length) {
+                emitRow();
+            }
+            return;
+        }
+
+        if(runFilled < elementCount) {
+            int n = Math.min(chunk.remaining(), elementCount - runFilled);
+            chunk.get(runValue, runFilled, n);
+            runFilled += n;
+            if(runFilled < elementCount) {
+                return;
+            }
+        }
+        // the run is complete, expand it without consuming more input
+        while(packetRemaining > 0) {
+            System.arraycopy(runValue, 0, rowBytes, rowFilled, elementCount);
+            rowFilled += elementCount;
+            packetRemaining -= elementCount;
+            if(rowFilled == rowBytes.length) {
+                emitRow();
+            }
+        }
+    }
+
+    private void emitRow() {
+        int index = TGAReader.getRowStart(width, 1, 0, descriptor);
+        int step = TGAReader.getColumnStep(descriptor);
+        TGAReader.decodeRow(type, width, depth, rowBytes, 0, colormap, order, row, index, step);
+
+        int y = ((descriptor & TGAReader.UPPER_ORIGIN) != 0) ? rows : height - rows - 1;
+        rows++;
+        rowFilled = 0;
+        if(rows == height) {
+            state = STATE_DONE;
+        }
+        listener.onRow(y, row);
+    }
+}
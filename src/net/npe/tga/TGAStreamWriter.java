@@ -0,0 +1,99 @@
+/**
+ * TGAStreamWriter.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Row by row TGAWriter for images that should not be held in one int[] or byte[].
+ * Rows are written top to bottom straight to the channel, only one encoded row is buffered.
+ */
+public final class TGAStreamWriter {
+    private final WritableByteChannel channel;
+    private final int width;
+    private final int height;
+    private final int elementCount;
+    private final Order order;
+    private final boolean encoding;
+    private final byte[] buffer;
+    private final int[] straight; // unpremultiplied copy of the row, premultiplied orders only
+    private int rows;
+
+    /**
+     * alpha selects 32 bit BGRA instead of 24 bit BGR output, it can't be detected before all rows are known.
+     * EncodeType.AUTO picks RLE for the same reason.
+     */
+    public TGAStreamWriter(WritableByteChannel channel, int width, int height, boolean alpha, Order order, EncodeType encodeType) throws IOException {
+        if(width < 0 || width > 0xFFFF || height < 0 || height > 0xFFFF) {
+            throw new IllegalArgumentException("Unsupported size: "+width+"x"+height);
+        }
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.elementCount = alpha ? 4 : 3;
+        this.order = order;
+        this.encoding = encodeType != EncodeType.NONE;
+        // worst case RLE is one packet header per pixel
+        this.buffer = new byte[Math.max(18 + TGAWriter.FOOTER_LENGTH, (elementCount + 1) * width)];
+        this.straight = order.premultiplied ? new int[width] : null;
+
+        int length = TGAWriter.writeHeader(buffer, 0, width, height, elementCount, encoding);
+        flush(length);
+    }
+
+    public void writeRow(int[] pixels, int offset) throws IOException {
+        if(rows == height) {
+            throw new IllegalStateException("All "+height+" rows are written");
+        }
+        if(straight != null) {
+            TGAWriter.unpremultiplyRow(pixels, offset, width, order, straight);
+            pixels = straight;
+            offset = 0;
+        }
+
+        int length;
+        if(encoding) {
+            length = TGAWriter.encodeRLE(pixels, offset, width, elementCount, order, buffer, 0);
+        } else {
+            length = TGAWriter.writeRaw(pixels, offset, width, elementCount, order, buffer, 0);
+        }
+        flush(length);
+        rows++;
+    }
+
+    /**
+     * Writes the footer, fails when rows are missing. The channel is left open.
+     */
+    public void finish() throws IOException {
+        if(rows != height) {
+            throw new IOException("Incomplete image: "+rows+" of "+height+" rows written");
+        }
+        flush(TGAWriter.writeFooter(buffer, 0));
+    }
+
+    public int getWrittenRows() {
+        return rows;
+    }
+
+    private void flush(int length) throws IOException {
+        ByteBuffer source = ByteBuffer.wrap(buffer, 0, length);
+        while(source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+}
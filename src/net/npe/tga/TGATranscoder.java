@@ -0,0 +1,363 @@
+/**
+ * TGATranscoder.java
+ *
+ * Copyright (c) 2026 TGAReader contributors
+ * Released under the MIT license.
+ * https://github.com/npedotnet/TGAReader/blob/master/LICENSE
+ *
+ * English document
+ * https://github.com/npedotnet/TGAReader/blob/master/README.md
+ *
+ * Japanese document
+ * https://web.archive.org/web/20150719013130/http://3dtech.jp/wiki/index.php?TGAReader
+ *
+ */
+
+package net.npe.tga;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites TGA files without decoding pixels: RLE is added or removed per packet, the origin is
+ * changed by reordering rows and elements, and depth, type, ID field and colormap are kept as is.
+ * Works on any element size (8/15/16/24/32 bit, indexed or not).
+ *
+ * Data is streamed row by row. A vertical flip writes the rows in reverse: a SeekableByteChannel
+ * (e.g. FileChannel) input is indexed in a first pass and then read backwards, other inputs keep
+ * the encoded output rows in memory. Extension and developer areas are not copied.
+ */
+public final class TGATranscoder {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private TGATranscoder() {
+    }
+
+    /**
+     * encodeType NONE or RLE forces the compression, AUTO keeps the one of the input.
+     * A null origin keeps the input origin.
+     */
+    public static byte[] transcode(byte[] buffer, EncodeType encodeType, Origin origin) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.length);
+        transcode(Channels.newChannel(new ByteArrayInputStream(buffer)), Channels.newChannel(out), encodeType, origin);
+        return out.toByteArray();
+    }
+
+    public static void transcode(ReadableByteChannel in, WritableByteChannel out, EncodeType encodeType, Origin origin) throws IOException {
+        Input input = new Input(in);
+        Output output = new Output(out);
+
+        byte[] header = new byte[18];
+        input.readFully(header, 0, header.length);
+        int colormapType = header[1] & 0xFF;
+        int type = header[2] & 0xFF;
+        int colormapLength = (header[5] & 0xFF) | (header[6] & 0xFF) << 8;
+        int colormapDepth = header[7] & 0xFF;
+        int width = TGAReader.getWidth(header);
+        int height = TGAReader.getHeight(header);
+        int depth = header[16] & 0xFF;
+        int descriptor = header[17] & 0xFF;
+
+        switch(type) {
+            case TGAReader.COLORMAP:
+            case TGAReader.RGB:
+            case TGAReader.GRAYSCALE:
+            case TGAReader.COLORMAP_RLE:
+            case TGAReader.RGB_RLE:
+            case TGAReader.GRAYSCALE_RLE:
+                break;
+            default:
+                throw new IOException("Unsupported image type: "+type);
+        }
+        if(depth != 8 && depth != 15 && depth != 16 && depth != 24 && depth != 32) {
+            throw new IOException("Unsupported depth:"+depth);
+        }
+
+        boolean rleInput = TGAReader.isRLE(type);
+        boolean rleOutput = (encodeType == EncodeType.AUTO) ? rleInput : encodeType == EncodeType.RLE;
+        int originBits = descriptor & (TGAReader.RIGHT_ORIGIN | TGAReader.UPPER_ORIGIN);
+        int targetBits = (origin == null) ? originBits : TGAWriter.getOriginBits(origin);
+        boolean flipX = ((originBits ^ targetBits) & TGAReader.RIGHT_ORIGIN) != 0;
+        boolean flipY = ((originBits ^ targetBits) & TGAReader.UPPER_ORIGIN) != 0;
+
+        // header, ID field and colormap
+        header[2] = (byte) (rleOutput ? (type | 0x08) : (type & ~0x08));
+        header[17] = (byte) ((descriptor & ~(TGAReader.RIGHT_ORIGIN | TGAReader.UPPER_ORIGIN)) | targetBits);
+        output.write(header, 0, header.length);
+        int prefixLength = header[0] & 0xFF;
+        if(colormapType == 1) {
+            prefixLength += ((colormapDepth + 7) / 8) * colormapLength;
+        }
+        byte[] prefix = new byte[prefixLength];
+        input.readFully(prefix, 0, prefix.length);
+        output.write(prefix, 0, prefix.length);
+
+        // rows
+        int elementCount = (depth + 7) / 8;
+        byte[] row = new byte[elementCount * width];
+        byte[] encoded = new byte[(elementCount + 1) * width];
+        if(flipY && in instanceof SeekableByteChannel) {
+            // index the rows, then read them bottom to top
+            long dataStart = input.position();
+            long[] rowStart = new long[height];
+            Input.State[] rowState = rleInput ? new Input.State[height] : null;
+            for(int y = 0; y < height; y++) {
+                if(rleInput) {
+                    rowStart[y] = input.position();
+                    rowState[y] = input.getState();
+                    input.readRLE(row, elementCount, (long) (height - y) * row.length);
+                } else {
+                    rowStart[y] = dataStart + (long) y * row.length;
+                }
+            }
+            for(int y = height - 1; y >= 0; y--) {
+                input.seek(rowStart[y]);
+                if(rleInput) {
+                    input.setState(rowState[y]);
+                    input.readRLE(row, elementCount, (long) (height - y) * row.length);
+                } else {
+                    input.readFully(row, 0, row.length);
+                }
+                int length = prepareRow(row, elementCount, flipX, rleOutput, encoded);
+                output.write(rleOutput ? encoded : row, 0, length);
+            }
+        } else {
+            List<byte[]> flipped = flipY ? new ArrayList<>() : null;
+            for(int y = 0; y < height; y++) {
+                if(rleInput) {
+                    input.readRLE(row, elementCount, (long) (height - y) * row.length);
+                } else {
+                    input.readFully(row, 0, row.length);
+                }
+                byte[] data = rleOutput ? encoded : row;
+                int length = prepareRow(row, elementCount, flipX, rleOutput, encoded);
+                if(flipY) {
+                    // not seekable, keep the output rows
+                    byte[] copy = new byte[length];
+                    System.arraycopy(data, 0, copy, 0, length);
+                    flipped.add(copy);
+                } else {
+                    output.write(data, 0, length);
+                }
+            }
+            if(flipY) {
+                for(int i = flipped.size() - 1; i >= 0; i--) {
+                    byte[] data = flipped.get(i);
+                    output.write(data, 0, data.length);
+                }
+            }
+        }
+
+        byte[] footer = new byte[TGAWriter.FOOTER_LENGTH];
+        TGAWriter.writeFooter(footer, 0);
+        output.write(footer, 0, footer.length);
+        output.flush();
+    }
+
+    // flips row in place if needed, returns the length of the row or of its RLE packets in encoded
+    private static int prepareRow(byte[] row, int elementCount, boolean flipX, boolean rleOutput, byte[] encoded) {
+        if(flipX) {
+            reverse(row, elementCount);
+        }
+        return rleOutput ? encodeRLE(row, elementCount, encoded) : row.length;
+    }
+
+    private static void reverse(byte[] row, int elementCount) {
+        for(int i = 0, j = row.length - elementCount; i < j; i += elementCount, j -= elementCount) {
+            for(int k = 0; k < elementCount; k++) {
+                byte t = row[i + k];
+                row[i + k] = row[j + k];
+                row[j + k] = t;
+            }
+        }
+    }
+
+    // RLE packets for one row of elements, runs of 2 or more identical elements become run packets
+    private static int encodeRLE(byte[] row, int elementCount, byte[] encoded) {
+        int pixels = row.length / elementCount;
+        int index = 0;
+        int i = 0;
+        while(i < pixels) {
+            int run = 1;
+            while(i + run < pixels && run < 128 && sameElement(row, i, i + run, elementCount)) {
+                run++;
+            }
+            if(run >= 2) {
+                encoded[index++] = (byte) (0x80 | (run - 1));
+                System.arraycopy(row, i * elementCount, encoded, index, elementCount);
+                index += elementCount;
+                i += run;
+                continue;
+            }
+            // raw packet up to the start of the next run
+            int count = 1;
+            while(i + count < pixels && count < 128 && !(i + count + 1 < pixels && sameElement(row, i + count, i + count + 1, elementCount))) {
+                count++;
+            }
+            encoded[index++] = (byte) (count - 1);
+            System.arraycopy(row, i * elementCount, encoded, index, count * elementCount);
+            index += count * elementCount;
+            i += count;
+        }
+        return index;
+    }
+
+    private static boolean sameElement(byte[] row, int a, int b, int elementCount) {
+        a *= elementCount;
+        b *= elementCount;
+        for(int k = 0; k < elementCount; k++) {
+            if(row[a + k] != row[b + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Input {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // RLE packet state, carried over when a packet crosses rows
+        private int packetRemaining;
+        private boolean packetRun;
+        private final byte[] runValue = new byte[4];
+
+        Input(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        // packet state at a row start, to resume a packet that crosses rows
+        static final class State {
+            final int packetRemaining;
+            final boolean packetRun;
+            final byte[] runValue;
+
+            State(int packetRemaining, boolean packetRun, byte[] runValue) {
+                this.packetRemaining = packetRemaining;
+                this.packetRun = packetRun;
+                this.runValue = runValue;
+            }
+        }
+
+        State getState() {
+            return new State(packetRemaining, packetRun, (packetRemaining > 0 && packetRun) ? runValue.clone() : null);
+        }
+
+        void setState(State state) {
+            packetRemaining = state.packetRemaining;
+            packetRun = state.packetRun;
+            if(state.runValue != null) {
+                System.arraycopy(state.runValue, 0, runValue, 0, runValue.length);
+            }
+        }
+
+        // SeekableByteChannel only
+        long position() throws IOException {
+            return ((SeekableByteChannel) channel).position() - buffer.remaining();
+        }
+
+        void seek(long position) throws IOException {
+            long end = ((SeekableByteChannel) channel).position();
+            long start = end - buffer.limit();
+            if(position >= start && position <= end) {
+                // still buffered
+                buffer.position((int) (position - start));
+                return;
+            }
+            ((SeekableByteChannel) channel).position(position);
+            buffer.clear();
+            buffer.flip();
+        }
+
+        void readFully(byte[] bytes, int offset, int length) throws IOException {
+            while(length > 0) {
+                fill();
+                int n = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        int read() throws IOException {
+            fill();
+            return buffer.get() & 0xFF;
+        }
+
+        // outputRemaining bounds the packets, overruns are rejected like in TGAReader.validate()
+        void readRLE(byte[] row, int elementCount, long outputRemaining) throws IOException {
+            int filled = 0;
+            while(filled < row.length) {
+                if(packetRemaining == 0) {
+                    int packet = read();
+                    packetRun = (packet & 0x80) != 0;
+                    packetRemaining = ((packet & 0x7F) + 1) * elementCount;
+                    if(packetRemaining > outputRemaining - filled) {
+                        throw new IOException("RLE packet overruns image data");
+                    }
+                    if(packetRun) {
+                        readFully(runValue, 0, elementCount);
+                    }
+                }
+                int n = Math.min(packetRemaining, row.length - filled);
+                if(packetRun) {
+                    for(int k = 0; k < n; k += elementCount) {
+                        System.arraycopy(runValue, 0, row, filled + k, elementCount);
+                    }
+                } else {
+                    readFully(row, filled, n);
+                }
+                filled += n;
+                packetRemaining -= n;
+            }
+        }
+
+        private void fill() throws IOException {
+            while(!buffer.hasRemaining()) {
+                buffer.clear();
+                int n = channel.read(buffer);
+                buffer.flip();
+                if(n < 0) {
+                    throw new IOException("Truncated TGA data");
+                }
+            }
+        }
+    }
+
+    private static final class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            while(length > 0) {
+                if(!buffer.hasRemaining()) {
+                    flush();
+                }
+                int n = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -15,22 +15,106 @@
 
 package net.npe.tga;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
 public class TGAWriter {
     private static final int MODE_RESET = 0;
     private static final int MODE_SELECT = 1;
     private static final int MODE_SAME_COLOR = 2;
     private static final int MODE_DIFFERENT_COLOR = 3;
     private static final byte[] FOOTER = {0,0,0,0,0,0,0,0,84,82,85,69,86,73,83,73,79,78,45,88,70,73,76,69,46,0}; // TRUEVISION-XFILE
+    static final int FOOTER_LENGTH = FOOTER.length;
+    private static final BooleanSupplier NOT_CANCELLED = () -> false;
 
     public static byte[] write(int[] pixels, int width, int height, Order order) {
         return write(pixels, width, height, order, EncodeType.AUTO);
     }
 
     public static byte[] write(int[] pixels, int width, int height, Order order, EncodeType encodeType) {
-        int elementCount = hasAlpha(pixels, order) ? 4 : 3;
-        int rawSize = elementCount * pixels.length;
-        int rleSize = getEncodeSize(pixels, width, elementCount);
-        int dataSize;
+        return write(pixels, width, height, order, encodeType, NOT_CANCELLED);
+    }
+
+    // cancelled is polled once per row, the encode stops with a CancellationException
+    static byte[] write(int[] pixels, int width, int height, Order order, EncodeType encodeType, BooleanSupplier cancelled) {
+        return write(new IntArraySource(pixels, 0, width, 0, 0, width, height, order), encodeType, Origin.UPPER_LEFT, cancelled);
+    }
+
+    /**
+     * Writes the width x height rectangle at (x, y) of a larger image without copying it first.
+     * Pixel (x, y) is pixels[offset + y * stride + x].
+     */
+    public static byte[] write(int[] pixels, int offset, int stride, int x, int y, int width, int height, Order order, EncodeType encodeType, Origin origin) {
+        checkRegion(pixels.length, offset, stride, 1, x, y, width, height);
+        return write(new IntArraySource(pixels, offset, stride, x, y, width, height, order), encodeType, origin, NOT_CANCELLED);
+    }
+
+    /**
+     * Pixel (x, y) is pixels.get(pixels.position() + y * stride + x), the buffer position is not changed.
+     */
+    public static byte[] write(IntBuffer pixels, int stride, int x, int y, int width, int height, Order order, EncodeType encodeType, Origin origin) {
+        checkRegion(pixels.remaining(), 0, stride, 1, x, y, width, height);
+        if(pixels.hasArray()) {
+            int offset = pixels.arrayOffset() + pixels.position();
+            return write(new IntArraySource(pixels.array(), offset, stride, x, y, width, height, order), encodeType, origin, NOT_CANCELLED);
+        }
+        return write(new IntBufferSource(pixels, stride, x, y, width, height, order), encodeType, origin, NOT_CANCELLED);
+    }
+
+    /**
+     * Byte interleaved pixels described by layout, e.g. TGAReader.BYTES_RGBA; wrap a byte[] to write from an array.
+     * stride is in bytes, pixel (x, y) starts at pixels.position() + y * stride + x * layout.pixelSize.
+     * The buffer position is not changed.
+     */
+    public static byte[] write(ByteBuffer pixels, ByteLayout layout, int stride, int x, int y, int width, int height, EncodeType encodeType, Origin origin) {
+        checkRegion(pixels.remaining(), 0, stride, layout.pixelSize, x, y, width, height);
+        return write(new ByteBufferSource(pixels, layout, stride, x, y, width, height), encodeType, origin, NOT_CANCELLED);
+    }
+
+    private static void checkRegion(int length, int offset, int stride, int pixelSize, int x, int y, int width, int height) {
+        if(offset < 0 || x < 0 || y < 0 || width < 0 || height < 0 || width > 0xFFFF || height > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid region: "+x+","+y+" "+width+"x"+height);
+        }
+        if(width == 0 || height == 0) {
+            return;
+        }
+        long first = offset + (long) stride * y + (long) pixelSize * x;
+        long last = offset + (long) stride * (y + height - 1) + (long) pixelSize * (x + width);
+        if(stride < (long) pixelSize * width || first < 0 || last > length) {
+            throw new IllegalArgumentException("Region out of bounds: "+x+","+y+" "+width+"x"+height+" stride "+stride);
+        }
+    }
+
+    private static byte[] write(RowSource source, EncodeType encodeType, Origin origin, BooleanSupplier cancelled) {
+        int width = source.width;
+        int height = source.height;
+        int originBits = getOriginBits(origin);
+        source.flipX = (originBits & TGAReader.RIGHT_ORIGIN) != 0;
+        source.flipY = (originBits & TGAReader.UPPER_ORIGIN) == 0;
+
+        // one pass converts every row once for the alpha check and the RLE size at either depth
+        boolean alpha = false;
+        long packets = 0;
+        long elements = 0;
+        boolean sizing = encodeType != EncodeType.NONE;
+        for(int i = 0; i < height && (sizing || !alpha); i++) {
+            source.load(i);
+            if(!alpha) {
+                alpha = hasAlpha(source.row, source.rowOffset, width, source.order);
+            }
+            if(sizing) {
+                long counts = getEncodeCounts(source.row, source.rowOffset, width);
+                packets += counts >>> 32;
+                elements += (int) counts;
+                checkCancelled(cancelled);
+            }
+        }
+        int elementCount = alpha ? 4 : 3;
+        long rawSize = (long) elementCount * width * height;
+        long rleSize = packets + elementCount * elements;
+        long dataSize;
         boolean encoding;
 
         switch(encodeType) {
@@ -49,12 +133,47 @@ public class TGAWriter {
                 break;
         }
 
-        int length = 18 + FOOTER.length + dataSize;
-        byte[] buffer = new byte[length];
+        long length = 18 + FOOTER.length + dataSize;
+        if(length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Image too large: "+width+"x"+height);
+        }
+        byte[] buffer = new byte[(int) length];
+
+        int index = writeHeader(buffer, 0, width, height, elementCount, encoding, originBits);
 
-        int index = 0;
+        for(int i = 0; i < height; i++) {
+            checkCancelled(cancelled);
+            source.load(i);
+            if(encoding) {
+                index = encodeRLE(source.row, source.rowOffset, width, elementCount, source.order, buffer, index);
+            } else {
+                index = writeRaw(source.row, source.rowOffset, width, elementCount, source.order, buffer, index);
+            }
+        }
 
-        // Header
+        writeFooter(buffer, index);
+        return buffer;
+    }
+
+    static int getOriginBits(Origin origin) {
+        switch(origin) {
+            case LOWER_RIGHT:
+                return TGAReader.RIGHT_ORIGIN;
+            case UPPER_LEFT:
+                return TGAReader.UPPER_ORIGIN;
+            case UPPER_RIGHT:
+                return TGAReader.RIGHT_ORIGIN | TGAReader.UPPER_ORIGIN;
+            default:
+                return 0;
+        }
+    }
+
+    // 18 byte header of an upper-left origin RGB image
+    static int writeHeader(byte[] buffer, int index, int width, int height, int elementCount, boolean encoding) {
+        return writeHeader(buffer, index, width, height, elementCount, encoding, TGAReader.UPPER_ORIGIN);
+    }
+
+    static int writeHeader(byte[] buffer, int index, int width, int height, int elementCount, boolean encoding, int originBits) {
         buffer[index++] = 0; // idFieldLength
         buffer[index++] = 0; // colormapType
         buffer[index++] = (byte) (encoding ? 10 : 2); // RGB or RGB_RLE
@@ -72,32 +191,29 @@ public class TGAWriter {
         buffer[index++] = (byte) ((height >> 0) & 0xFF); // height
         buffer[index++] = (byte) ((height >> 8) & 0xFF); // height
         buffer[index++] = (byte) (8 * elementCount); // depth
-        buffer[index++] = 0x20; // descriptor TODO alpha channel depth
-
-        if(encoding) {
-            index = encodeRLE(pixels, width, elementCount, order, buffer, index);
-        } else {
-            index = writeRaw(pixels, buffer, index, elementCount, order);
-        }
+        buffer[index++] = (byte) originBits; // descriptor TODO alpha channel depth
+        return index;
+    }
 
-        // Copy Footer
+    static int writeFooter(byte[] buffer, int index) {
         for(int i = 0; i < FOOTER.length; i++) {
             buffer[index++] = FOOTER[i];
         }
-        return buffer;
+        return index;
     }
 
-    private static int writeRaw(int[] pixels, byte[] buffer, int index, int elementCount, Order order) {
+    static int writeRaw(int[] pixels, int offset, int length, int elementCount, Order order, byte[] buffer, int index) {
+        int end = offset + length;
         if(elementCount == 3) {
             // BGR
-            for(int i = 0; i < pixels.length; i++) {
+            for(int i = offset; i < end; i++) {
                 buffer[index++] = (byte) ((pixels[i] >> order.blueShift) & 0xFF);
                 buffer[index++] = (byte) ((pixels[i] >> order.greenShift) & 0xFF);
                 buffer[index++] = (byte) ((pixels[i] >> order.redShift) & 0xFF);
             }
         } else {
             // BGRA
-            for(int i = 0; i < pixels.length; i++) {
+            for(int i = offset; i < end; i++) {
                 buffer[index++] = (byte) ((pixels[i] >> order.blueShift) & 0xFF);
                 buffer[index++] = (byte) ((pixels[i] >> order.greenShift) & 0xFF);
                 buffer[index++] = (byte) ((pixels[i] >> order.redShift) & 0xFF);
@@ -107,13 +223,22 @@ public class TGAWriter {
         return index;
     }
 
-    private static int getEncodeSize(int[] pixels, int width, int elementCount) {
-        int size = 0;
+    // encoded size of one row of length pixels starting at offset
+    static int getEncodeSize(int[] pixels, int offset, int length, int elementCount) {
+        long counts = getEncodeCounts(pixels, offset, length);
+        return (int) (counts >>> 32) + elementCount * (int) counts;
+    }
+
+    // packet headers in the high and stored elements in the low 32 bits, the size is headers + elementCount * elements
+    private static long getEncodeCounts(int[] pixels, int offset, int length) {
+        int packets = 0;
+        int elements = 0;
         int color = 0;
         int mode = MODE_RESET;
         int start = 0;
+        int end = offset + length;
 
-        for(int i = 0; i < pixels.length; i++) {
+        for(int i = offset; i < end; i++) {
             if(mode == MODE_RESET) {
                 color = pixels[i];
                 mode = MODE_SELECT;
@@ -124,52 +249,54 @@ public class TGAWriter {
             } else if(mode == MODE_SAME_COLOR) {
                 if(color != pixels[i]) {
                     // packet + rleData
-                    size += 1 + elementCount;
+                    packets++;
+                    elements++;
                     mode = MODE_SELECT;
                     color = pixels[i];
                     start = i;
                 } else if((i - start) >= 127) {
-                    size += 1 + elementCount;
+                    packets++;
+                    elements++;
                     mode = MODE_RESET;
                 }
             } else if(mode == MODE_DIFFERENT_COLOR) {
                 if(color == pixels[i]) {
                     // packet + rawData * count
-                    size += 1 + elementCount * (i - 1 - start);
+                    packets++;
+                    elements += i - 1 - start;
                     mode = MODE_SAME_COLOR;
                     color = pixels[i];
                     start = i - 1;
                 } else if((i - start) >= 127) {
-                    size += 1 + elementCount * 128;
+                    packets++;
+                    elements += 128;
                     mode = MODE_RESET;
                 }
             }
-
-            if((i + 1) % width == 0 && mode != MODE_RESET) {
-                if(mode == MODE_SAME_COLOR) {
-                    size += 1 + elementCount;
-                } else {
-                    // MODE_SELECT or MODE_DIFFERENT_COLOR
-                    size += 1 + elementCount * (i - start + 1);
-                }
-                mode = MODE_RESET;
-            }
             // update color
             color = pixels[i];
         }
 
-        if(mode != MODE_RESET) {
-            System.err.println("Error!");
+        // flush the row end
+        if(mode == MODE_SAME_COLOR) {
+            packets++;
+            elements++;
+        } else if(mode != MODE_RESET) {
+            // MODE_SELECT or MODE_DIFFERENT_COLOR
+            packets++;
+            elements += end - start;
         }
-        return size;
+        return ((long) packets << 32) | elements;
     }
 
-    private static int encodeRLE(int[] pixels, int width, int elementCount, Order order, byte[] buffer, int index) {
+    // RLE packets never cross rows, so every row is encoded on its own
+    static int encodeRLE(int[] pixels, int offset, int length, int elementCount, Order order, byte[] buffer, int index) {
         int color = 0;
         int mode = MODE_RESET;
         int start = 0;
+        int end = offset + length;
 
-        for(int i = 0; i < pixels.length; i++) {
+        for(int i = offset; i < end; i++) {
             if(mode == MODE_RESET) {
                 color = pixels[i];
                 mode = MODE_SELECT;
@@ -200,22 +327,16 @@ public class TGAWriter {
                     mode = MODE_RESET;
                 }
             }
-
-            if((i + 1) % width == 0 && mode != MODE_RESET) {
-                if(mode == MODE_SAME_COLOR) {
-                    index = encodeRLE(buffer, index, color, i - start + 1, elementCount, order);
-                } else {
-                    // MODE_SELECT or MODE_DIFFERENT_COLOR
-                    index = encodeRLE(buffer, index, pixels, start, i - start + 1, elementCount, order);
-                }
-                mode = MODE_RESET;
-            }
             // update color
             color = pixels[i];
         }
 
-        if(mode != MODE_RESET) {
-            System.err.println("Error!");
+        // flush the row end
+        if(mode == MODE_SAME_COLOR) {
+            index = encodeRLE(buffer, index, color, end - start, elementCount, order);
+        } else if(mode != MODE_RESET) {
+            // MODE_SELECT or MODE_DIFFERENT_COLOR
+            index = encodeRLE(buffer, index, pixels, start, end - start, elementCount, order);
         }
         return index;
     }
@@ -245,9 +366,38 @@ public class TGAWriter {
         return index;
     }
 
-    private static boolean hasAlpha(int[] pixels, Order order) {
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if(cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    // the order of the straight alpha pixels unpremultiplyRow produces
+    static Order straightOrder(Order order) {
+        return order.premultiplied ? new Order(order.redShift, order.greenShift, order.blueShift, order.alphaShift) : order;
+    }
+
+    // straight may be pixels itself when offset is 0
+    static void unpremultiplyRow(int[] pixels, int offset, int width, Order order, int[] straight) {
+        for(int i = 0; i < width; i++) {
+            straight[i] = unpremultiply(pixels[offset + i], order);
+        }
+    }
+
+    static int unpremultiply(int color, Order order) {
+        int a = (color >> order.alphaShift) & 0xFF;
+        if(a != 0 && a != 0xFF) {
+            int r = Math.min(0xFF, (((color >> order.redShift) & 0xFF) * 0xFF + a / 2) / a);
+            int g = Math.min(0xFF, (((color >> order.greenShift) & 0xFF) * 0xFF + a / 2) / a);
+            int b = Math.min(0xFF, (((color >> order.blueShift) & 0xFF) * 0xFF + a / 2) / a);
+            color = (r << order.redShift) | (g << order.greenShift) | (b << order.blueShift) | (a << order.alphaShift);
+        }
+        return color;
+    }
+
+    private static boolean hasAlpha(int[] pixels, int offset, int length, Order order) {
         int alphaShift = order.alphaShift;
-        for(int i = 0; i < pixels.length; i++) {
+        for(int i = offset; i < offset + length; i++) {
             int alpha = (pixels[i] >> alphaShift) & 0xFF;
             if(alpha != 0xFF) {
                 return true;
@@ -255,4 +405,141 @@ public class TGAWriter {
         }
         return false;
     }
+
+    // one rectangle row at a time as packed straight alpha ints, in the order it is stored
+    private static abstract class RowSource {
+        final int width;
+        final int height;
+        Order order;
+        boolean flipX;
+        boolean flipY;
+        int[] row;
+        int rowOffset;
+        private int[] scratch;
+
+        RowSource(int width, int height, Order order) {
+            this.width = width;
+            this.height = height;
+            this.order = order;
+        }
+
+        // points row and rowOffset at rectangle row y, upper row first
+        abstract void read(int y);
+
+        int[] getScratch() {
+            if(scratch == null) {
+                scratch = new int[width];
+            }
+            return scratch;
+        }
+
+        void load(int i) {
+            read(flipY ? height - 1 - i : i);
+            if(flipX) {
+                int[] reversed = getScratch();
+                if(row == reversed) {
+                    for(int l = 0, r = width - 1; l < r; l++, r--) {
+                        int t = reversed[l];
+                        reversed[l] = reversed[r];
+                        reversed[r] = t;
+                    }
+                } else {
+                    for(int j = 0; j < width; j++) {
+                        reversed[j] = row[rowOffset + width - 1 - j];
+                    }
+                }
+                row = reversed;
+                rowOffset = 0;
+            }
+        }
+    }
+
+    private static class IntArraySource extends RowSource {
+        private final int[] pixels;
+        private final int start;
+        private final int stride;
+        private final Order source;
+
+        IntArraySource(int[] pixels, int offset, int stride, int x, int y, int width, int height, Order order) {
+            super(width, height, straightOrder(order));
+            this.pixels = pixels;
+            this.start = offset + stride * y + x;
+            this.stride = stride;
+            this.source = order;
+        }
+
+        @Override
+        void read(int y) {
+            if(source.premultiplied) {
+                // TGA stores straight alpha
+                row = getScratch();
+                rowOffset = 0;
+                unpremultiplyRow(pixels, start + stride * y, width, source, row);
+            } else {
+                row = pixels;
+                rowOffset = start + stride * y;
+            }
+        }
+    }
+
+    private static class IntBufferSource extends RowSource {
+        private final IntBuffer pixels;
+        private final int start;
+        private final int stride;
+        private final Order source;
+
+        IntBufferSource(IntBuffer pixels, int stride, int x, int y, int width, int height, Order order) {
+            super(width, height, straightOrder(order));
+            this.pixels = pixels.duplicate();
+            this.start = pixels.position() + stride * y + x;
+            this.stride = stride;
+            this.source = order;
+        }
+
+        @Override
+        void read(int y) {
+            row = getScratch();
+            rowOffset = 0;
+            pixels.position(start + stride * y);
+            pixels.get(row, 0, width);
+            if(source.premultiplied) {
+                unpremultiplyRow(row, 0, width, source, row);
+            }
+        }
+    }
+
+    private static class ByteBufferSource extends RowSource {
+        private final ByteBuffer pixels;
+        private final ByteLayout layout;
+        private final int start;
+        private final int stride;
+
+        ByteBufferSource(ByteBuffer pixels, ByteLayout layout, int stride, int x, int y, int width, int height) {
+            super(width, height, TGAReader.ARGB);
+            this.pixels = pixels;
+            this.layout = layout;
+            this.start = pixels.position() + stride * y + layout.pixelSize * x;
+            this.stride = stride;
+        }
+
+        @Override
+        void read(int y) {
+            row = getScratch();
+            rowOffset = 0;
+            ByteLayout l = layout;
+            for(int j = 0, i = start + stride * y; j < width; j++, i += l.pixelSize) {
+                int r, g, b;
+                if(l.luminanceOffset >= 0) {
+                    r = g = b = pixels.get(i + l.luminanceOffset) & 0xFF;
+                } else {
+                    r = pixels.get(i + l.redOffset) & 0xFF;
+                    g = pixels.get(i + l.greenOffset) & 0xFF;
+                    b = pixels.get(i + l.blueOffset) & 0xFF;
+                }
+                int a = (l.alphaOffset >= 0) ? pixels.get(i + l.alphaOffset) & 0xFF : 0xFF;
+                int color = (a << 24) | (r << 16) | (g << 8) | b;
+                row[j] = l.premultiplied ? unpremultiply(color, TGAReader.ARGB) : color;
+            }
+        }
+    }
 }